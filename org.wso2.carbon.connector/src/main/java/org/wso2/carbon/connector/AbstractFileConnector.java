@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector;
+
+import java.io.IOException;
+
+import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.wso2.carbon.connector.core.AbstractConnector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileAsyncExecutor;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
+import org.wso2.carbon.connector.util.BandwidthThrottle;
+import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FileWorkerPool;
+import org.wso2.carbon.connector.util.LocalFolderWatcher;
+import org.wso2.carbon.connector.util.SftpSessionPool;
+import org.wso2.carbon.connector.util.TransferScheduler;
+
+/**
+ * Base class of the file connector operations.
+ * With async set to true, the operation runs on the {@link FileAsyncExecutor} and the mediation continues
+ * in the onComplete sequence, instead of blocking the mediation thread on the file system.
+ * Operations on remote hosts first wait for a slot of the {@link TransferScheduler}, and use the file system
+ * options of the transport profile given with transportProfile (see {@link FTPSiteUtils}).
+ * When the first operation is deployed, the file system manager and the configured endpoints are warmed up
+ * in the background (see {@link FileConnectorVFS#warmUp()}). Once the last operation is undeployed, the
+ * shared executors, folder watchers, pooled sessions, file system manager and MBeans are released.
+ */
+public abstract class AbstractFileConnector extends AbstractConnector implements ManagedLifecycle {
+    private static final Object lifecycleLock = new Object();
+    private static int deployed;
+
+    public void init(SynapseEnvironment synapseEnvironment) {
+        synchronized (lifecycleLock) {
+            if (deployed++ > 0) {
+                return;
+            }
+        }
+        Thread warmUp = new Thread(new Runnable() {
+            public void run() {
+                FileConnectorVFS.warmUp();
+            }
+        }, "file-connector-warmup");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    public void destroy() {
+        synchronized (lifecycleLock) {
+            if (deployed == 0 || --deployed > 0) {
+                return;
+            }
+            FileAsyncExecutor.shutdown();
+            FileWorkerPool.shutdown();
+            LocalFolderWatcher.closeAll();
+            SftpSessionPool.close();
+            BandwidthThrottle.close();
+            FileConnectorVFS.close();
+        }
+    }
+
+    public boolean mediate(MessageContext messageContext) {
+        String async = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.ASYNC);
+        if ("true".equals(async)) {
+            String onComplete = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                    FileConstants.ON_COMPLETE);
+            if (onComplete == null || onComplete.trim().equals("")) {
+                handleException("The onComplete sequence is required in async mode.", messageContext);
+            }
+            if (FileAsyncExecutor.getInstance().execute(this, messageContext, onComplete.trim())) {
+                // the current flow stops here, the operation continues it in the onComplete sequence
+                return false;
+            }
+        }
+        String previousProfile = FTPSiteUtils.setProfile((String) ConnectorUtils.lookupTemplateParamater(
+                messageContext, FileConstants.TRANSPORT_PROFILE));
+        try {
+            TransferScheduler.Permit permit = null;
+            try {
+                permit = TransferScheduler.acquire(messageContext);
+            } catch (IOException e) {
+                handleException(e.getMessage(), e, messageContext);
+            }
+            try {
+                return super.mediate(messageContext);
+            } finally {
+                permit.release();
+            }
+        } finally {
+            FTPSiteUtils.setProfile(previousProfile);
+        }
+    }
+}
@@ -19,7 +19,6 @@ package org.wso2.carbon.connector;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import javax.xml.stream.XMLStreamException;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.commons.io.IOUtils;
@@ -28,18 +27,17 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemManager;
 import org.apache.commons.vfs2.FileSystemOptions;
-import org.apache.commons.vfs2.VFS;
 import org.apache.synapse.MessageContext;
-import org.codehaus.jettison.json.JSONException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.BandwidthThrottle;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
 import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
-public class FileAppend extends AbstractConnector implements Connector {
+public class FileAppend extends AbstractFileConnector implements Connector {
 
     private static final String DEFAULT_ENCODING = "UTF8";
     private static Log log = LogFactory.getLog(FileAppend.class);
@@ -69,21 +67,9 @@ public class FileAppend extends AbstractConnector implements Connector {
      */
     private void generateResult(MessageContext messageContext, boolean resultStatus) {
         ResultPayloadCreate resultPayload = new ResultPayloadCreate();
-        String response = "<result><success>" + resultStatus + "</success></result>";
-        OMElement element;
-        try {
-            element = resultPayload.performSearchMessages(response);
-            resultPayload.preparePayload(messageContext, element);
-        } catch (XMLStreamException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (JSONException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        }
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.SUCCESS,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
     }
 
     /**
@@ -99,14 +85,14 @@ public class FileAppend extends AbstractConnector implements Connector {
         boolean resultStatus = false;
         FileObject fileObj = null;
         try {
-            FileSystemManager manager = VFS.getManager();
+            FileSystemManager manager = FileConnectorVFS.getManager();
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
             fileObj = manager.resolveFile(source, opts);
             // if the file does not exist, this method creates it
             if (!fileObj.exists()) {
                 fileObj.createFile();
             }
-            out = fileObj.getContent().getOutputStream(true);
+            out = BandwidthThrottle.throttle(fileObj.getContent().getOutputStream(true), "FileAppend", fileObj);
             if (encoding==null) {
                 IOUtils.write(content, out, DEFAULT_ENCODING);
             } else {
@@ -124,6 +110,7 @@ public class FileAppend extends AbstractConnector implements Connector {
                 //close the output stream
                 out.close();
             }
+            FileConnectorVFS.evict(fileObj);
         }
         return resultStatus;
     }
@@ -19,25 +19,20 @@ package org.wso2.carbon.connector;
 
 import java.io.*;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
-import javax.xml.stream.XMLStreamException;
 import org.apache.axiom.om.OMElement;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.*;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
-import org.codehaus.jettison.json.JSONException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.*;
 
-public class FileArchives extends AbstractConnector implements Connector {
+public class FileArchives extends AbstractFileConnector implements Connector {
     private static Log log = LogFactory.getLog(FileArchives.class);
     byte[] bytes = new byte[FileConstants.BUFFER_SIZE];
 
@@ -46,9 +41,23 @@ public class FileArchives extends AbstractConnector implements Connector {
                 FileConstants.FILE_LOCATION);
         String destinstion = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
                 FileConstants.NEW_FILE_LOCATION);
+        String archiveType = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.ARCHIVE_TYPE);
+        String compressionLevel = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.COMPRESSION_LEVEL);
+        String parallelCompression = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.PARALLEL_COMPRESSION);
         boolean resultStatus = false;
         try {
-            resultStatus = fileCompress(messageContext, source, destinstion);
+            if (archiveType == null || archiveType.trim().equals("")) {
+                archiveType = FileTarUtil.getArchiveType(destinstion);
+            }
+            if (FileTarUtil.isTarType(archiveType.trim())) {
+                resultStatus = tarCompress(messageContext, source, destinstion, archiveType.trim(),
+                        compressionLevel, parallelCompression);
+            } else {
+                resultStatus = fileCompress(messageContext, source, destinstion);
+            }
         } catch (Exception e) {
             handleException(e.getMessage(), messageContext);
         }
@@ -66,20 +75,19 @@ public class FileArchives extends AbstractConnector implements Connector {
             SynapseException {
         boolean resultStatus;
         try {
-            FileSystemManager fsManager = VFS.getManager();
+            FileSystemManager fsManager = FileConnectorVFS.getManager();
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
             FileObject fileObj = fsManager.resolveFile(source, opts);
             FileObject destObj = fsManager.resolveFile(destination, opts);
             if (fileObj.exists()) {
                 if (fileObj.getType() == FileType.FOLDER) {
-                    List<FileObject> fileList = new ArrayList<FileObject>();
-                    getAllFiles(fileObj,fileList);
-                    writeZipFiles(fileObj, destObj, fileList);
+                    writeZipFiles(fileObj, destObj);
                 } else {
                     ZipOutputStream zos = null;
                     InputStream fin = null;
                     try {
-                        zos = new ZipOutputStream(destObj.getContent().getOutputStream());
+                        zos = new ZipOutputStream(BandwidthThrottle.throttle(destObj.getContent().getOutputStream(),
+                                "FileArchives", fileObj, destObj));
                         fin = fileObj.getContent().getInputStream();
                         ZipEntry zipEntry = new ZipEntry(fileObj.getName().getBaseName());
                         zos.putNextEntry(zipEntry);
@@ -112,36 +120,55 @@ public class FileArchives extends AbstractConnector implements Connector {
     }
 
     /**
-     * @param dir      source file directory
-     * @param fileList list of file inside directory
-     * @throws IOException
+     * @param messageContext      The message context that is processed by a handler in the handle method
+     * @param source              The file/folder to be archived
+     * @param destination         Destination of the archived file
+     * @param archiveType         One of tar, tar.gz, tar.bz2, tar.xz
+     * @param compressionLevel    Compression level (0-9)
+     * @param parallelCompression Compress gzip blocks in parallel (true/false)
+     * @return return status
      */
-    public void getAllFiles(FileObject dir, List<FileObject> fileList) throws IOException {
+    private boolean tarCompress(MessageContext messageContext, String source, String destination,
+                                String archiveType, String compressionLevel, String parallelCompression) {
+        boolean resultStatus = false;
         try {
-            FileObject[] children = dir.getChildren();
-            for (FileObject child : children) {
-                fileList.add(child);
-                if (child.getType() == FileType.FOLDER) {
-                    getAllFiles(child, fileList);
+            FileSystemManager fsManager = FileConnectorVFS.getManager();
+            FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+            FileObject fileObj = fsManager.resolveFile(source, opts);
+            FileObject destObj = fsManager.resolveFile(destination, opts);
+            if (fileObj.exists()) {
+                int level = -1;
+                if (compressionLevel != null && !compressionLevel.trim().equals("")) {
+                    level = Integer.parseInt(compressionLevel.trim());
                 }
+                new FileTarUtil().archive(fileObj, destObj, archiveType, level,
+                        "true".equals(parallelCompression));
+                resultStatus = true;
+            } else {
+                log.error("The File location does not exist.");
             }
-        } catch (Exception e) {
-            log.error("Unable to get all files.", e);
+        } catch (IOException e) {
+            log.error("Unable to process the tar file", e);
+            handleException(e.getMessage(), messageContext);
         }
+        return resultStatus;
     }
 
     /**
+     * Zip the files of a folder, entry by entry while walking the tree
+     *
      * @param fileObj        source fileObject
      * @param directoryToZip destination fileObject
-     * @param fileList       list of files to be compressed
      * @throws IOException
      */
-    public void writeZipFiles(FileObject fileObj, FileObject directoryToZip, List<FileObject> fileList) throws
-            IOException {
+    public void writeZipFiles(FileObject fileObj, FileObject directoryToZip) throws IOException {
         ZipOutputStream zos = null;
+        FileTreeWalker walker = new FileTreeWalker(fileObj);
         try {
-            zos = new ZipOutputStream(directoryToZip.getContent().getOutputStream());
-            for (FileObject file : fileList) {
+            zos = new ZipOutputStream(BandwidthThrottle.throttle(directoryToZip.getContent().getOutputStream(),
+                    "FileArchives", fileObj, directoryToZip));
+            FileObject file;
+            while ((file = walker.next()) != null) {
                 if (file.getType() == FileType.FILE) {
                     addToZip(fileObj, file, zos);
                 }
@@ -149,6 +176,7 @@ public class FileArchives extends AbstractConnector implements Connector {
         } catch (IOException e) {
             log.error("Error occur in writing files", e);
         } finally {
+            walker.close();
             if (zos != null) {
                 zos.close();
             }
@@ -194,20 +222,8 @@ public class FileArchives extends AbstractConnector implements Connector {
      */
     private void generateResults(MessageContext messageContext, boolean resultStatus) {
         ResultPayloadCreate resultPayload = new ResultPayloadCreate();
-        String response = "<result><success>" + resultStatus + "</success></result>";
-        try {
-            OMElement element = resultPayload.performSearchMessages(response);
-            resultPayload.preparePayload(messageContext, element);
-
-        } catch (XMLStreamException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (JSONException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        }
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.SUCCESS,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
     }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.synapse.MessageContext;
+import org.wso2.carbon.connector.core.ConnectException;
+import org.wso2.carbon.connector.core.Connector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileCheckpointStore;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
+import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FilePattenMatcher;
+import org.wso2.carbon.connector.util.FolderSnapshot;
+import org.wso2.carbon.connector.util.LocalFileUtil;
+import org.wso2.carbon.connector.util.LocalFolderWatcher;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
+
+/**
+ * Get the files created, modified or deleted under a folder since the previous call.
+ * Local folders are tracked with a WatchService; other folders are listed and compared with a persisted
+ * snapshot of the names, sizes and modification times, without reading any file.
+ */
+public class FileChanges extends AbstractFileConnector implements Connector {
+
+    public void connect(MessageContext messageContext) throws ConnectException {
+        String source = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_LOCATION);
+        String filePattern = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_PATTERN);
+        String recursive = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.RECURSIVE);
+        String checkpointKey = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.CHECKPOINT_KEY);
+        try {
+            List<String[]> changes = getChanges(source, filePattern, Boolean.parseBoolean(recursive),
+                    checkpointKey);
+            generateResults(messageContext, changes);
+        } catch (IOException e) {
+            handleException("Unable to get the changes of the folder.", e, messageContext);
+        }
+    }
+
+    /**
+     * Generate the result, e.g. &lt;result&gt;&lt;created&gt;in/a.csv&lt;/created&gt;&lt;/result&gt;
+     *
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param changes        Changes as {type, relative path}
+     */
+    private void generateResults(MessageContext messageContext, List<String[]> changes) {
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
+        OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+        for (String[] change : changes) {
+            OMElement changeElement = factory.createOMElement(change[0], ns, result);
+            changeElement.setText(change[1]);
+        }
+        messageContext.getEnvelope().getBody().addChild(result);
+    }
+
+    /**
+     * Get the changes of the folder
+     *
+     * @param source        Location of the folder
+     * @param filePattern   Pattern of the file names
+     * @param recursive     Include the sub folders
+     * @param checkpointKey Key of the snapshot, defaults to the folder URI
+     * @return return the changes as {type, relative path}
+     * @throws IOException
+     */
+    private List<String[]> getChanges(String source, String filePattern, boolean recursive, String checkpointKey)
+            throws IOException {
+        FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+        FileSystemManager manager = FileConnectorVFS.getManager();
+        FileObject folder = manager.resolveFile(source, opts);
+        if (!folder.exists() || folder.getType() != FileType.FOLDER) {
+            throw new IOException("The folder " + source + " does not exist.");
+        }
+        String key = "changes:" + (checkpointKey == null || checkpointKey.trim().equals("")
+                ? folder.getName().getFriendlyURI() : checkpointKey.trim());
+        File localFolder = LocalFileUtil.getLocalFile(folder);
+        if (localFolder != null) {
+            return LocalFolderWatcher.getWatcher(key, localFolder.toPath(), recursive, filePattern).poll();
+        }
+        FilePattenMatcher matcher = filePattern == null || filePattern.trim().equals("") ? null
+                : new FilePattenMatcher(filePattern.trim());
+        List<String[]> changes = new ArrayList<String[]>();
+        synchronized (FileCheckpointStore.getLock(key)) {
+            FolderSnapshot snapshot = FolderSnapshot.load(key);
+            Map<String, String> current = new TreeMap<String, String>();
+            list(folder, "", matcher, recursive, current);
+            snapshot.update("", current, changes);
+            if (!changes.isEmpty()) {
+                snapshot.save();
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * List the files of a remote folder with the attributes returned by the listing
+     */
+    private void list(FileObject folder, String prefix, FilePattenMatcher matcher, boolean recursive,
+                      Map<String, String> entries) throws IOException {
+        for (FileObject child : folder.getChildren()) {
+            String name = child.getName().getBaseName();
+            if (child.getType() == FileType.FILE) {
+                if (matcher == null || matcher.validate(name)) {
+                    FileContent content = child.getContent();
+                    entries.put(prefix + name, FolderSnapshot.getState(content.getSize(),
+                            content.getLastModifiedTime()));
+                }
+            } else if (recursive && child.getType() == FileType.FOLDER) {
+                list(child, prefix + name + "/", matcher, true, entries);
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.synapse.MessageContext;
+import org.wso2.carbon.connector.core.ConnectException;
+import org.wso2.carbon.connector.core.Connector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
+import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FileWorkerPool;
+import org.wso2.carbon.connector.util.LocalFileUtil;
+import org.wso2.carbon.connector.util.MappedFile;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
+
+/**
+ * Check whether two files are identical, optionally giving the offset of the first differing byte.
+ * Files of different sizes are different without reading them. Two local files are compared on their
+ * memory mappings; otherwise both files are read concurrently and compared block by block on their
+ * digests, stopping at the first differing block.
+ */
+public class FileCompare extends AbstractFileConnector implements Connector {
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final byte[] END = new byte[0];
+
+    public void connect(MessageContext messageContext) throws ConnectException {
+        String source = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_LOCATION);
+        String destination = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.NEW_FILE_LOCATION);
+        String reportOffset = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.REPORT_OFFSET);
+        try {
+            long offset = compareFiles(source, destination, Boolean.parseBoolean(reportOffset));
+            generateResults(messageContext, offset, Boolean.parseBoolean(reportOffset));
+        } catch (IOException e) {
+            handleException("Unable to compare the files.", e, messageContext);
+        }
+    }
+
+    /**
+     * Generate the result, e.g. &lt;result&gt;&lt;identical&gt;false&lt;/identical&gt;&lt;offset&gt;42&lt;/offset&gt;&lt;/result&gt;
+     *
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param offset         First differing offset, -1 if the files are identical
+     * @param reportOffset   Add the offset to the result
+     */
+    private void generateResults(MessageContext messageContext, long offset, boolean reportOffset) {
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
+        OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+        factory.createOMElement(FileConstants.IDENTICAL, ns, result).setText(String.valueOf(offset < 0));
+        if (reportOffset && offset >= 0) {
+            factory.createOMElement(FileConstants.OFFSET, ns, result).setText(String.valueOf(offset));
+        }
+        messageContext.getEnvelope().getBody().addChild(result);
+    }
+
+    /**
+     * Compare the files
+     *
+     * @param source       Location of the first file
+     * @param destination  Location of the second file
+     * @param reportOffset Find the exact offset of the first difference
+     * @return return -1 if the files are identical, otherwise the offset of the first difference (only exact
+     * when reportOffset is set)
+     * @throws IOException
+     */
+    long compareFiles(String source, String destination, boolean reportOffset) throws IOException {
+        FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+        FileSystemManager manager = FileConnectorVFS.getManager();
+        FileObject file1 = manager.resolveFile(source, opts);
+        FileObject file2 = manager.resolveFile(destination, opts);
+        if (!file1.exists() || file1.getType() != FileType.FILE) {
+            throw new IOException("The file " + source + " does not exist.");
+        }
+        if (!file2.exists() || file2.getType() != FileType.FILE) {
+            throw new IOException("The file " + destination + " does not exist.");
+        }
+        long size1 = file1.getContent().getSize();
+        long size2 = file2.getContent().getSize();
+        if (size1 != size2 && !reportOffset) {
+            return Math.min(size1, size2);
+        }
+        long length = Math.min(size1, size2);
+        File local1 = LocalFileUtil.getLocalFile(file1);
+        File local2 = LocalFileUtil.getLocalFile(file2);
+        long offset;
+        if (local1 != null && local2 != null) {
+            offset = compareMapped(local1, local2, length);
+        } else {
+            long block = compareDigests(file1, file2, length);
+            if (block < 0) {
+                offset = -1;
+            } else if (!reportOffset) {
+                // the start of the first differing block
+                offset = block * BLOCK_SIZE;
+            } else {
+                offset = compareRange(file1, file2, block * BLOCK_SIZE,
+                        Math.min(BLOCK_SIZE, length - block * BLOCK_SIZE));
+            }
+        }
+        if (offset < 0 && size1 != size2) {
+            // the shorter file is a prefix of the longer one
+            return length;
+        }
+        return offset;
+    }
+
+    /**
+     * Compare the memory mappings of two local files
+     *
+     * @return return the offset of the first difference, or -1
+     */
+    private long compareMapped(File file1, File file2, long length) throws IOException {
+        MappedFile mapped1 = new MappedFile(file1);
+        MappedFile mapped2 = new MappedFile(file2);
+        try {
+            long position = 0;
+            while (position < length) {
+                ByteBuffer buffer1 = mapped1.getBuffer(position);
+                ByteBuffer buffer2 = mapped2.getBuffer(position);
+                int count = (int) Math.min(length - position, Math.min(buffer1.remaining(), buffer2.remaining()));
+                buffer1.limit(count);
+                buffer2.limit(count);
+                if (!buffer1.equals(buffer2)) {
+                    for (int i = 0; i < count; i++) {
+                        if (buffer1.get(i) != buffer2.get(i)) {
+                            return position + i;
+                        }
+                    }
+                }
+                position += count;
+            }
+            return -1;
+        } finally {
+            mapped1.close();
+            mapped2.close();
+        }
+    }
+
+    /**
+     * Read both files concurrently and compare the digests of their blocks
+     *
+     * @return return the index of the first differing block, or -1
+     */
+    private long compareDigests(FileObject file1, FileObject file2, long length) throws IOException {
+        AtomicBoolean stop = new AtomicBoolean(false);
+        BlockingQueue<byte[]> digests1 = new LinkedBlockingQueue<byte[]>();
+        BlockingQueue<byte[]> digests2 = new LinkedBlockingQueue<byte[]>();
+        Future<?> hasher1 = FileWorkerPool.getExecutor().submit(createHasher(file1, length, digests1, stop));
+        Future<?> hasher2 = FileWorkerPool.getExecutor().submit(createHasher(file2, length, digests2, stop));
+        try {
+            long block = 0;
+            while (true) {
+                byte[] digest1 = takeDigest(digests1, hasher1);
+                byte[] digest2 = takeDigest(digests2, hasher2);
+                if (digest1 == END || digest2 == END) {
+                    return digest1 == digest2 ? -1 : block;
+                }
+                if (!Arrays.equals(digest1, digest2)) {
+                    return block;
+                }
+                block++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while comparing the files.");
+        } finally {
+            stop.set(true);
+        }
+    }
+
+    private byte[] takeDigest(BlockingQueue<byte[]> digests, Future<?> hasher) throws IOException,
+            InterruptedException {
+        byte[] digest = digests.take();
+        if (digest == END) {
+            // END is queued before the hasher completes, wait for its outcome so that read failures are raised
+            try {
+                hasher.get();
+            } catch (ExecutionException e) {
+                IOException exception = new IOException("Unable to read a file.");
+                exception.initCause(e.getCause());
+                throw exception;
+            }
+        }
+        return digest;
+    }
+
+    private Callable<Void> createHasher(final FileObject file, final long length, final BlockingQueue<byte[]> digests,
+                                        final AtomicBoolean stop) {
+        return new Callable<Void>() {
+            public Void call() throws IOException {
+                InputStream in = null;
+                try {
+                    MessageDigest digest = MessageDigest.getInstance("MD5");
+                    in = LocalFileUtil.openInputStream(file, 0, length);
+                    byte[] buffer = new byte[FileConstants.BUFFER_SIZE * 16];
+                    int inBlock = 0;
+                    int read;
+                    while (!stop.get() && (read = in.read(buffer, 0, Math.min(buffer.length,
+                            BLOCK_SIZE - inBlock))) != -1) {
+                        digest.update(buffer, 0, read);
+                        inBlock += read;
+                        if (inBlock == BLOCK_SIZE) {
+                            digests.add(digest.digest());
+                            inBlock = 0;
+                        }
+                    }
+                    if (inBlock > 0) {
+                        digests.add(digest.digest());
+                    }
+                    return null;
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IOException("MD5 is not available.");
+                } finally {
+                    // always release the comparing thread, also on failures
+                    digests.add(END);
+                    if (in != null) {
+                        in.close();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Find the first differing byte of a block which is known to differ
+     */
+    private long compareRange(FileObject file1, FileObject file2, long offset, long length) throws IOException {
+        InputStream in1 = LocalFileUtil.openInputStream(file1, offset, length);
+        InputStream in2 = null;
+        try {
+            in2 = LocalFileUtil.openInputStream(file2, offset, length);
+            byte[] buffer1 = new byte[FileConstants.BUFFER_SIZE * 16];
+            byte[] buffer2 = new byte[FileConstants.BUFFER_SIZE * 16];
+            long position = offset;
+            while (true) {
+                int read1 = fill(in1, buffer1);
+                int read2 = fill(in2, buffer2);
+                for (int i = 0; i < Math.min(read1, read2); i++) {
+                    if (buffer1[i] != buffer2[i]) {
+                        return position + i;
+                    }
+                }
+                if (read1 != read2 || read1 < buffer1.length) {
+                    return read1 == read2 ? -1 : position + Math.min(read1, read2);
+                }
+                position += read1;
+            }
+        } finally {
+            in1.close();
+            if (in2 != null) {
+                in2.close();
+            }
+        }
+    }
+
+    private int fill(InputStream in, byte[] buffer) throws IOException {
+        int count = 0;
+        int read;
+        while (count < buffer.length && (read = in.read(buffer, count, buffer.length - count)) != -1) {
+            count += read;
+        }
+        return count;
+    }
+}
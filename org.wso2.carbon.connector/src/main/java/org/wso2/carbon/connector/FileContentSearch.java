@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.synapse.MessageContext;
+import org.wso2.carbon.connector.core.ConnectException;
+import org.wso2.carbon.connector.core.Connector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
+import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FilePattenMatcher;
+import org.wso2.carbon.connector.util.FileWorkerPool;
+import org.wso2.carbon.connector.util.LocalFileUtil;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
+
+/**
+ * Search the content of the files under a folder (or of a single file) for a literal text or a regular
+ * expression. Files are searched in parallel on the worker pool. Literal texts are searched on the raw bytes
+ * with the Boyer-Moore-Horspool algorithm, regular expressions line by line.
+ * Every match gives the file, the line number and the byte offset.
+ * The encoding must keep the ASCII characters as single bytes (e.g. UTF-8, ISO-8859-1), the line feeds are
+ * counted on the raw bytes; UTF-16 and UTF-32 are rejected.
+ */
+public class FileContentSearch extends AbstractFileConnector implements Connector {
+    private static final int SEARCH_BUFFER_SIZE = 64 * 1024;
+
+    public void connect(MessageContext messageContext) throws ConnectException {
+        String source = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_LOCATION);
+        String filePattern = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_PATTERN);
+        String recursive = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.RECURSIVE);
+        String searchText = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.SEARCH_TEXT);
+        String useRegex = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.USE_REGEX);
+        String firstMatchOnly = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FIRST_MATCH_ONLY);
+        String encoding = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.ENCODING);
+        if (searchText == null || searchText.equals("")) {
+            handleException("The searchText is required.", messageContext);
+        }
+        try {
+            Charset charset = Charset.forName(encoding == null || encoding.trim().equals("") ? "UTF-8"
+                    : encoding.trim());
+            if (!isAsciiCompatible(charset)) {
+                handleException("The encoding " + charset.name() + " is not supported by the search, it does not "
+                        + "keep the ASCII characters as single bytes.", messageContext);
+            }
+            Searcher searcher;
+            if (Boolean.parseBoolean(useRegex)) {
+                searcher = new RegexSearcher(Pattern.compile(searchText), charset,
+                        Boolean.parseBoolean(firstMatchOnly));
+            } else {
+                searcher = new LiteralSearcher(searchText.getBytes(charset), Boolean.parseBoolean(firstMatchOnly));
+            }
+            List<Match> matches = search(source, filePattern, Boolean.parseBoolean(recursive), searcher);
+            generateResults(messageContext, matches);
+        } catch (PatternSyntaxException e) {
+            handleException("Invalid regular expression : " + searchText, e, messageContext);
+        } catch (IOException e) {
+            handleException("Unable to search the content of the files.", e, messageContext);
+        }
+    }
+
+    /**
+     * The line feeds and the literal texts are searched on the raw bytes, which needs every ASCII character to
+     * be the same single byte in the encoding
+     *
+     * @param charset Encoding of the files
+     * @return return true if the ASCII characters are encoded as themselves
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        char[] ascii = new char[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (char) i;
+        }
+        byte[] bytes = new String(ascii).getBytes(charset);
+        if (bytes.length != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generate the result with the matches
+     *
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param matches        Matches found
+     */
+    private void generateResults(MessageContext messageContext, List<Match> matches) {
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
+        OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+        for (Match match : matches) {
+            OMElement matchElement = factory.createOMElement(FileConstants.MATCH, ns, result);
+            factory.createOMElement(FileConstants.FILE, ns, matchElement).setText(match.file);
+            factory.createOMElement(FileConstants.LINE, ns, matchElement).setText(String.valueOf(match.line));
+            factory.createOMElement(FileConstants.OFFSET, ns, matchElement).setText(String.valueOf(match.offset));
+        }
+        messageContext.getEnvelope().getBody().addChild(result);
+    }
+
+    /**
+     * Search the files
+     *
+     * @param source      Location of the folder or file
+     * @param filePattern Pattern of the file names to search
+     * @param recursive   Search the sub folders too
+     * @param searcher    The search to run on every file
+     * @return return the matches, in the order of the files
+     * @throws IOException
+     */
+    List<Match> search(String source, String filePattern, boolean recursive, final Searcher searcher)
+            throws IOException {
+        FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+        FileSystemManager manager = FileConnectorVFS.getManager();
+        FileObject sourceFile = manager.resolveFile(source, opts);
+        if (!sourceFile.exists()) {
+            throw new IOException("The file or folder " + source + " does not exist.");
+        }
+        List<FileObject> files = new ArrayList<FileObject>();
+        List<String> names = new ArrayList<String>();
+        if (sourceFile.getType() == FileType.FILE) {
+            files.add(sourceFile);
+            names.add(sourceFile.getName().getBaseName());
+        } else {
+            FilePattenMatcher matcher = filePattern == null || filePattern.trim().equals("") ? null
+                    : new FilePattenMatcher(filePattern.trim());
+            listFiles(sourceFile, "", matcher, recursive, files, names);
+        }
+        List<Future<List<Match>>> futures = new ArrayList<Future<List<Match>>>();
+        for (int i = 0; i < files.size(); i++) {
+            final FileObject file = files.get(i);
+            final String name = names.get(i);
+            futures.add(FileWorkerPool.getExecutor().submit(new Callable<List<Match>>() {
+                public List<Match> call() throws IOException {
+                    InputStream in = LocalFileUtil.openInputStream(file);
+                    try {
+                        return searcher.search(name, in);
+                    } finally {
+                        in.close();
+                    }
+                }
+            }));
+        }
+        List<Match> matches = new ArrayList<Match>();
+        for (Future<List<Match>> future : futures) {
+            try {
+                matches.addAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while searching the files.");
+            } catch (ExecutionException e) {
+                IOException exception = new IOException("Unable to search a file.");
+                exception.initCause(e.getCause());
+                throw exception;
+            }
+        }
+        return matches;
+    }
+
+    private void listFiles(FileObject folder, String prefix, FilePattenMatcher matcher, boolean recursive,
+                           List<FileObject> files, List<String> names) throws IOException {
+        for (FileObject child : folder.getChildren()) {
+            String name = child.getName().getBaseName();
+            if (child.getType() == FileType.FILE) {
+                if (matcher == null || matcher.validate(name)) {
+                    files.add(child);
+                    names.add(prefix + name);
+                }
+            } else if (recursive && child.getType() == FileType.FOLDER) {
+                listFiles(child, prefix + name + "/", matcher, true, files, names);
+            }
+        }
+    }
+
+    interface Searcher {
+        List<Match> search(String file, InputStream in) throws IOException;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search of the encoded text on the raw bytes, counting the lines on the way
+     */
+    static class LiteralSearcher implements Searcher {
+        private final byte[] pattern;
+        private final int[] shift = new int[256];
+        private final boolean firstMatchOnly;
+
+        LiteralSearcher(byte[] pattern, boolean firstMatchOnly) {
+            this.pattern = pattern;
+            this.firstMatchOnly = firstMatchOnly;
+            Arrays.fill(shift, pattern.length);
+            for (int i = 0; i < pattern.length - 1; i++) {
+                shift[pattern[i] & 0xff] = pattern.length - 1 - i;
+            }
+        }
+
+        public List<Match> search(String file, InputStream in) throws IOException {
+            List<Match> matches = new ArrayList<Match>();
+            int m = pattern.length;
+            byte[] buffer = new byte[SEARCH_BUFFER_SIZE + m];
+            // file offset of buffer[0], and the line number of the first byte not counted yet
+            long base = 0;
+            long line = 1;
+            int length = 0;
+            int start = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length < buffer.length) {
+                    continue;
+                }
+                start = scan(file, buffer, length, start, base, line, matches);
+                if (start < 0) {
+                    return matches;
+                }
+                // keep the last m - 1 bytes, a match may start in them
+                int keep = m - 1;
+                line += countLines(buffer, 0, length - keep);
+                System.arraycopy(buffer, length - keep, buffer, 0, keep);
+                base += length - keep;
+                start -= length - keep;
+                length = keep;
+            }
+            scan(file, buffer, length, start, base, line, matches);
+            return matches;
+        }
+
+        /**
+         * @return return the position to continue the scan from, or -1 when the first match is found
+         */
+        private int scan(String file, byte[] buffer, int length, int start, long base, long line,
+                         List<Match> matches) {
+            int m = pattern.length;
+            int i = start;
+            int counted = 0;
+            while (i <= length - m) {
+                int j = m - 1;
+                while (j >= 0 && buffer[i + j] == pattern[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    line += countLines(buffer, counted, i);
+                    counted = i;
+                    matches.add(new Match(file, line, base + i));
+                    if (firstMatchOnly) {
+                        return -1;
+                    }
+                    i += m;
+                } else {
+                    i += shift[buffer[i + m - 1] & 0xff];
+                }
+            }
+            return i;
+        }
+
+        private static long countLines(byte[] buffer, int from, int to) {
+            long lines = 0;
+            for (int i = from; i < to; i++) {
+                if (buffer[i] == '\n') {
+                    lines++;
+                }
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * Regular expression search, line by line
+     */
+    static class RegexSearcher implements Searcher {
+        private final Pattern pattern;
+        private final Charset charset;
+        private final boolean firstMatchOnly;
+
+        RegexSearcher(Pattern pattern, Charset charset, boolean firstMatchOnly) {
+            this.pattern = pattern;
+            this.charset = charset;
+            this.firstMatchOnly = firstMatchOnly;
+        }
+
+        public List<Match> search(String file, InputStream in) throws IOException {
+            List<Match> matches = new ArrayList<Match>();
+            byte[] buffer = new byte[SEARCH_BUFFER_SIZE];
+            ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+            long lineNumber = 1;
+            long lineOffset = 0;
+            long offset = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        lineBytes.write(buffer, start, i - start);
+                        if (match(file, lineBytes.toByteArray(), lineNumber, lineOffset, matches)) {
+                            return matches;
+                        }
+                        lineBytes.reset();
+                        lineNumber++;
+                        lineOffset = offset + i + 1;
+                        start = i + 1;
+                    }
+                }
+                lineBytes.write(buffer, start, read - start);
+                offset += read;
+            }
+            if (lineBytes.size() > 0) {
+                match(file, lineBytes.toByteArray(), lineNumber, lineOffset, matches);
+            }
+            return matches;
+        }
+
+        /**
+         * @return return true when the search of the file is done
+         */
+        private boolean match(String file, byte[] bytes, long lineNumber, long lineOffset, List<Match> matches) {
+            String text = new String(bytes, charset);
+            Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                long offset = lineOffset + text.substring(0, matcher.start()).getBytes(charset).length;
+                matches.add(new Match(file, lineNumber, offset));
+                if (firstMatchOnly) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static class Match {
+        final String file;
+        final long line;
+        final long offset;
+
+        Match(String file, long line, long offset) {
+            this.file = file;
+            this.line = line;
+            this.offset = offset;
+        }
+    }
+}
@@ -20,7 +20,8 @@ package org.wso2.carbon.connector;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import javax.xml.stream.XMLStreamException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.commons.io.IOUtils;
@@ -28,17 +29,22 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.*;
 import org.apache.synapse.MessageContext;
-import org.codehaus.jettison.json.JSONException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.BandwidthThrottle;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
 import org.wso2.carbon.connector.util.FilePattenMatcher;
+import org.wso2.carbon.connector.util.FileTreeWalker;
+import org.wso2.carbon.connector.util.LocalFileUtil;
+import org.wso2.carbon.connector.util.NioFileUtil;
+import org.wso2.carbon.connector.util.PipelinedCopy;
 import org.wso2.carbon.connector.util.ResultPayloadCreate;
+import org.wso2.carbon.connector.util.SftpSegmentedTransfer;
 
-public class FileCopy extends AbstractConnector implements Connector {
+public class FileCopy extends AbstractFileConnector implements Connector {
     private static Log log = LogFactory.getLog(FileCopy.class);
 
     public void connect(MessageContext messageContext) throws ConnectException {
@@ -48,9 +54,13 @@ public class FileCopy extends AbstractConnector implements Connector {
                 FileConstants.NEW_FILE_LOCATION);
         String filePattern =(String) ConnectorUtils.lookupTemplateParamater(messageContext,
                 FileConstants.FILE_PATTERN);
+        String segments = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.SEGMENTS);
+        String checksum = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.CHECKSUM);
         boolean resultStatus = false;
         try {
-            resultStatus = copyFile(source, destination, filePattern,messageContext);
+            resultStatus = copyFile(source, destination, filePattern, segments, checksum, messageContext);
         } catch (IOException e) {
             handleException(e.getMessage(), messageContext);
         }
@@ -67,34 +77,31 @@ public class FileCopy extends AbstractConnector implements Connector {
      */
     private void generateResults(MessageContext messageContext, boolean resultStatus,
                                  ResultPayloadCreate resultPayload) {
-        String response = "<result><copy>" + resultStatus + "</copy></result>";
-        OMElement element;
-        try {
-            element = resultPayload.performSearchMessages(response);
-            resultPayload.preparePayload(messageContext, element);
-        } catch (XMLStreamException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (JSONException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        }
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.COPY,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
     }
     /**
      * Copy files
      *
      * @param fileLocation    Location of the file
      * @param newFileLocation new file location
+     * @param segments        Number of concurrent segments for large SFTP downloads and uploads
+     * @param checksum        Expected checksum of a segmented transfer
      * @return return a resultStatus
      */
-    private boolean copyFile(String fileLocation, String newFileLocation, String filePattern,MessageContext
-            messageContext) throws IOException {
+    private boolean copyFile(String fileLocation, String newFileLocation, String filePattern, String segments,
+                             String checksum, MessageContext messageContext) throws IOException {
         boolean resultStatus = false;
+        if (filePattern == null && !BandwidthThrottle.isLimited("FileCopy")) {
+            Path sourcePath = NioFileUtil.toPath(fileLocation);
+            Path destinationPath = NioFileUtil.toPath(newFileLocation);
+            if (sourcePath != null && destinationPath != null) {
+                return copyLocal(sourcePath, newFileLocation, messageContext);
+            }
+        }
         FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
-        FileSystemManager manager = VFS.getManager();
+        FileSystemManager manager = FileConnectorVFS.getManager();
         FileObject souFile = manager.resolveFile(fileLocation, opts);
         FileObject destFile = manager.resolveFile(newFileLocation, opts);
         if (filePattern!=null) {
@@ -113,12 +120,31 @@ public class FileCopy extends AbstractConnector implements Connector {
                 if (souFile.getType() == FileType.FILE) {
                     InputStream fin = null;
                     OutputStream fOut = null;
+                    FileObject outFile = null;
                     try {
                         String name = souFile.getName().getBaseName();
-                        FileObject outFile = manager.resolveFile(newFileLocation + name, opts);
+                        outFile = manager.resolveFile(newFileLocation + name, opts);
+                        // the segments are written outside the throttled streams
+                        int segmentCount = BandwidthThrottle.isLimited("FileCopy", souFile, outFile) ? 1
+                                : SftpSegmentedTransfer.getSegments(segments);
+                        if (SftpSegmentedTransfer.isDownload(souFile, outFile, segmentCount)
+                                && SftpSegmentedTransfer.download(souFile, outFile, segmentCount, checksum)) {
+                            return true;
+                        }
+                        if (SftpSegmentedTransfer.isUpload(souFile, outFile, segmentCount)
+                                && SftpSegmentedTransfer.upload(souFile, outFile, segmentCount, checksum)) {
+                            return true;
+                        }
                         fin = souFile.getContent().getInputStream();
-                        fOut = outFile.getContent().getOutputStream();
+                        fOut = BandwidthThrottle.throttle(outFile.getContent().getOutputStream(), "FileCopy",
+                                souFile, outFile);
+                        if (LocalFileUtil.getLocalFile(souFile) == null
+                                && LocalFileUtil.getLocalFile(outFile) == null) {
+                            // both sides are remote, overlap the reads with the writes
+                            PipelinedCopy.copy(fin, fOut);
+                        } else {
                             IOUtils.copyLarge(fin, fOut);
+                        }
                         resultStatus = true;
                     } catch (IOException e) {
                         handleException("Unable to copy.",e,messageContext);
@@ -130,9 +156,10 @@ public class FileCopy extends AbstractConnector implements Connector {
                         if (fin != null) {
                             fin.close();
                         }
+                        FileConnectorVFS.evict(outFile);
                     }
                 } else {
-                    destFile.copyFrom(souFile, Selectors.SELECT_ALL);
+                    copyFolder(souFile, destFile);
                     resultStatus = true;
                 }
             } else {
@@ -143,9 +170,94 @@ public class FileCopy extends AbstractConnector implements Connector {
         return resultStatus;
     }
 
+    /**
+     * Copy between local locations with java.nio.file, which lets the file system do the copy
+     *
+     * @param source         The local file or folder
+     * @param destination    Location of the local destination folder
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @return return a resultStatus
+     */
+    private boolean copyLocal(Path source, String destination, MessageContext messageContext) {
+        try {
+            BasicFileAttributes attributes = NioFileUtil.getAttributes(source);
+            if (attributes == null) {
+                log.error("The File Location does not exist.");
+                return false;
+            }
+            if (attributes.isDirectory()) {
+                try {
+                    NioFileUtil.copy(source, NioFileUtil.toPath(destination));
+                } finally {
+                    FileConnectorVFS.evictTree(destination);
+                }
+            } else {
+                // the name is appended to the destination as given, like the remote copy does
+                String target = destination + source.getFileName();
+                try {
+                    NioFileUtil.copy(source, NioFileUtil.toPath(target));
+                } finally {
+                    FileConnectorVFS.evict(target);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            handleException("Unable to copy.", e, messageContext);
+        }
+        return false;
+    }
+
+    /**
+     * Copy a folder tree while walking it, each folder before its contents
+     *
+     * @param source      The folder to copy
+     * @param destination The destination folder
+     * @throws IOException
+     */
+    private void copyFolder(FileObject source, FileObject destination) throws IOException {
+        destination.createFolder();
+        FileTreeWalker walker = new FileTreeWalker(source);
+        try {
+            FileObject child;
+            while ((child = walker.next()) != null) {
+                FileObject target = destination.resolveFile(source.getName().getRelativeName(child.getName()));
+                if (child.getType() == FileType.FOLDER) {
+                    target.createFolder();
+                } else if (child.getType() == FileType.FILE) {
+                    copyContent(child, target);
+                }
+            }
+        } finally {
+            walker.close();
+        }
+    }
+
+    /**
+     * Copy a file through the bandwidth limits of the copy
+     *
+     * @param source      The file to copy
+     * @param destination The destination file
+     * @throws IOException
+     */
+    private void copyContent(FileObject source, FileObject destination) throws IOException {
+        InputStream in = source.getContent().getInputStream();
+        OutputStream out = null;
+        try {
+            out = BandwidthThrottle.throttle(destination.getContent().getOutputStream(), "FileCopy", source,
+                    destination);
+            IOUtils.copyLarge(in, out);
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            in.close();
+            FileConnectorVFS.evict(destination);
+        }
+    }
+
     public void copy(String source, String destination, String filePattern)throws IOException{
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
-            FileSystemManager manager = VFS.getManager();
+            FileSystemManager manager = FileConnectorVFS.getManager();
             FileObject souFile = manager.resolveFile(source, opts);
             FileObject[] children = souFile.getChildren();
             for (FileObject child : children) {
@@ -153,7 +265,12 @@ public class FileCopy extends AbstractConnector implements Connector {
                     if (new FilePattenMatcher(filePattern).validate(child.getName().getBaseName())) {
                         String name = child.getName().getBaseName();
                         FileObject outFile = manager.resolveFile(destination + name, opts);
-                        outFile.copyFrom(child, Selectors.SELECT_FILES);
+                        if (child.getType() == FileType.FILE) {
+                            copyContent(child, outFile);
+                        } else {
+                            outFile.copyFrom(child, Selectors.SELECT_FILES);
+                            FileConnectorVFS.evict(outFile);
+                        }
                     }
                 }
             catch(IOException e) {
@@ -20,24 +20,21 @@ package org.wso2.carbon.connector;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import javax.xml.stream.XMLStreamException;
-
 import org.apache.axiom.om.OMElement;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.*;
 import org.apache.synapse.MessageContext;
-import org.codehaus.jettison.json.JSONException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
 import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
-public class FileCreate extends AbstractConnector implements Connector {
+public class FileCreate extends AbstractFileConnector implements Connector {
     private static final String DEFAULT_ENCODING = "UTF8";
     private static Log log = LogFactory.getLog(FileCreate.class);
 
@@ -77,7 +74,7 @@ public class FileCreate extends AbstractConnector implements Connector {
         boolean resultStatus = false;
         FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
         OutputStream out = null;
-        FileSystemManager manager = VFS.getManager();
+        FileSystemManager manager = FileConnectorVFS.getManager();
         if (manager != null) {
             FileObject sourceFile = manager.resolveFile(source, opts);
             try {
@@ -106,6 +103,7 @@ public class FileCreate extends AbstractConnector implements Connector {
                 if (out != null) {
                     out.close();
                 }
+                FileConnectorVFS.evict(sourceFile);
             }
         }
         return resultStatus;
@@ -127,20 +125,8 @@ public class FileCreate extends AbstractConnector implements Connector {
      */
     private void generateOutput(MessageContext messageContext, boolean resultStatus) {
         ResultPayloadCreate resultPayload = new ResultPayloadCreate();
-        String response = "<result><success>" + resultStatus + "</success></result>";
-
-        try {
-            OMElement element = resultPayload.performSearchMessages(response);
-            resultPayload.preparePayload(messageContext, element);
-        } catch (XMLStreamException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (JSONException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        }
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.SUCCESS,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
     }
 }
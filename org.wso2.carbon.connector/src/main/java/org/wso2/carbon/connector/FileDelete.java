@@ -18,24 +18,25 @@
 package org.wso2.carbon.connector;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
-import javax.xml.stream.XMLStreamException;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.*;
 import org.apache.synapse.MessageContext;
-import org.codehaus.jettison.json.JSONException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FileTreeWalker;
+import org.wso2.carbon.connector.util.NioFileUtil;
 import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
-public class FileDelete extends AbstractConnector implements Connector {
+public class FileDelete extends AbstractFileConnector implements Connector {
 
     private static Log log = LogFactory.getLog(FileDelete.class);
 
@@ -60,20 +61,9 @@ public class FileDelete extends AbstractConnector implements Connector {
      */
     private void generateResults(MessageContext messageContext, boolean resultStatus) {
         ResultPayloadCreate resultPayload = new ResultPayloadCreate();
-        String response = "<result><success>" + resultStatus + "</success></result>";
-        try {
-            OMElement element = resultPayload.performSearchMessages(response);
-            resultPayload.preparePayload(messageContext, element);
-        } catch (XMLStreamException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (JSONException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        }
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.SUCCESS,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
     }
 
     /**
@@ -85,17 +75,28 @@ public class FileDelete extends AbstractConnector implements Connector {
     private boolean deleteFile(String source,MessageContext messageContext) throws IOException {
         boolean resultStatus = false;
         try {
+            Path path = NioFileUtil.toPath(source);
+            if (path != null) {
+                if (NioFileUtil.getAttributes(path) == null) {
+                    log.error("The file does not exist.");
+                    return false;
+                }
+                NioFileUtil.delete(path);
+                FileConnectorVFS.evictTree(source);
+                return true;
+            }
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
-            FileSystemManager manager = VFS.getManager();
+            FileSystemManager manager = FileConnectorVFS.getManager();
             // Create remote object
             FileObject remoteFile = manager.resolveFile(source, opts);
             if (remoteFile.exists()) {
                 if (remoteFile.getType() == FileType.FILE) {
                     //delete a file
                     remoteFile.delete();
+                    FileConnectorVFS.evict(remoteFile);
                 } else if(remoteFile.getType()==FileType.FOLDER) {
-                    //delete folder
-                    remoteFile.delete(Selectors.SELECT_ALL);
+                    //delete folder, its contents first
+                    deleteFolder(remoteFile);
                 }
                 resultStatus = true;
             } else {
@@ -107,4 +108,25 @@ public class FileDelete extends AbstractConnector implements Connector {
         }
         return resultStatus;
     }
+
+    /**
+     * Delete a folder tree while walking it, each folder after its contents
+     *
+     * @param folder The folder to delete
+     * @throws IOException
+     */
+    private void deleteFolder(FileObject folder) throws IOException {
+        FileTreeWalker walker = new FileTreeWalker(folder, Selectors.SELECT_ALL, -1, true);
+        try {
+            FileObject file;
+            while ((file = walker.next()) != null) {
+                file.delete();
+                FileConnectorVFS.evict(file);
+            }
+        } finally {
+            walker.close();
+        }
+        folder.delete();
+        FileConnectorVFS.evict(folder);
+    }
 }
@@ -18,8 +18,8 @@
 package org.wso2.carbon.connector;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
-import javax.xml.stream.XMLStreamException;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.commons.logging.Log;
@@ -27,18 +27,17 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileSystemManager;
-import org.apache.commons.vfs2.VFS;
 import org.apache.synapse.MessageContext;
-import org.codehaus.jettison.json.JSONException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.NioFileUtil;
 import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
-public class FileExist extends AbstractConnector implements Connector {
+public class FileExist extends AbstractFileConnector implements Connector {
     private static Log log = LogFactory.getLog(FileExist.class);
 
     public void connect(MessageContext messageContext) throws ConnectException {
@@ -61,21 +60,9 @@ public class FileExist extends AbstractConnector implements Connector {
      */
     private void generateResults(MessageContext messageContext, boolean isFileExist) {
         ResultPayloadCreate resultPayload = new ResultPayloadCreate();
-        String response = "<result><fileExist>" + isFileExist + "</fileExist></result>";
-        OMElement element;
-        try {
-            element = resultPayload.performSearchMessages(response);
-            resultPayload.preparePayload(messageContext, element);
-        } catch (XMLStreamException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (JSONException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        }
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.FILE_EXIST,
+                String.valueOf(isFileExist));
+        resultPayload.preparePayload(messageContext, element);
     }
 
     /**
@@ -88,7 +75,12 @@ public class FileExist extends AbstractConnector implements Connector {
     private boolean isFileExist(String source,MessageContext messageContext) throws IOException {
         boolean isFileExist = false;
         try {
-            FileSystemManager manager = VFS.getManager();
+            Path path = NioFileUtil.toPath(source);
+            if (path != null) {
+                // a single stat, without resolving a file object
+                return NioFileUtil.getAttributes(path) != null;
+            }
+            FileSystemManager manager = FileConnectorVFS.getManager();
             // Create remote object
             FileObject remoteFile =
                     manager.resolveFile(source,
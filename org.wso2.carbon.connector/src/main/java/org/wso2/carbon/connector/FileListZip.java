@@ -18,7 +18,6 @@
 
 package org.wso2.carbon.connector;
 
-import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.apache.axiom.om.OMNamespace;
@@ -27,21 +26,21 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemManager;
 import org.apache.commons.vfs2.FileSystemOptions;
-import org.apache.commons.vfs2.VFS;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
 import java.io.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
-public class FileListZip extends AbstractConnector implements Connector {
+public class FileListZip extends AbstractFileConnector implements Connector {
 
     private static Log log = LogFactory.getLog(FileListZip.class);
 
@@ -56,7 +55,7 @@ public class FileListZip extends AbstractConnector implements Connector {
 
         try {
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
-            FileSystemManager manager = VFS.getManager();
+            FileSystemManager manager = FileConnectorVFS.getManager();
 
             // Create remote object
             FileObject remoteFile = manager.resolveFile(source, opts);
@@ -64,10 +63,9 @@ public class FileListZip extends AbstractConnector implements Connector {
                 // open the zip file
                 InputStream input = remoteFile.getContent().getInputStream();
                 ZipInputStream zip = new ZipInputStream(input);
-                OMFactory factory = OMAbstractFactory.getOMFactory();
+                OMFactory factory = ResultPayloadCreate.getFactory();
                 String outputResult;
-                OMNamespace ns = factory.createOMNamespace(FileConstants.FILECON,
-                        FileConstants.NAMESPACE);
+                OMNamespace ns = ResultPayloadCreate.getNamespace();
                 OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
                 ZipEntry zipEntry;
                 // iterates over entries in the zip file
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.synapse.MessageContext;
+import org.wso2.carbon.connector.core.ConnectException;
+import org.wso2.carbon.connector.core.Connector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
+import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FilePattenMatcher;
+import org.wso2.carbon.connector.util.LocalFileUtil;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
+
+/**
+ * Concatenate the files of a folder which match a pattern into one destination file.
+ * Local files are transferred to a local destination without copying them through the Java heap.
+ * With skipHeader set to true, the first line of every file except the first is dropped when it is the same
+ * as the first line of the first file (e.g. CSV headers), files without the header are merged whole.
+ */
+public class FileMerge extends AbstractFileConnector implements Connector {
+    private static final String SORT_BY_MTIME = "mtime";
+    /**
+     * Longest header compared, a longer first line is taken as data
+     */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static Log log = LogFactory.getLog(FileMerge.class);
+
+    public void connect(MessageContext messageContext) throws ConnectException {
+        String source = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_LOCATION);
+        String destination = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.NEW_FILE_LOCATION);
+        String filePattern = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_PATTERN);
+        String sortBy = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.SORT_BY);
+        String skipHeader = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.SKIP_HEADER);
+        boolean resultStatus = false;
+        try {
+            resultStatus = mergeFiles(source, destination, filePattern, SORT_BY_MTIME.equals(sortBy),
+                    Boolean.parseBoolean(skipHeader));
+        } catch (IOException e) {
+            handleException("Unable to merge the files.", e, messageContext);
+        }
+        generateResults(messageContext, resultStatus);
+    }
+
+    /**
+     * Generate the result
+     *
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param resultStatus   Result of the status (true/false)
+     */
+    private void generateResults(MessageContext messageContext, boolean resultStatus) {
+        ResultPayloadCreate resultPayload = new ResultPayloadCreate();
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.SUCCESS,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
+    }
+
+    /**
+     * Merge the files
+     *
+     * @param source      Folder of the files
+     * @param destination Location of the merged file
+     * @param filePattern Pattern of the files to merge
+     * @param byMtime     Order the files by last modified time instead of name
+     * @param skipHeader  Drop the first line of every file except the first, when it is the header of the first
+     * @return return true if the files are merged, false if no file matches
+     * @throws IOException
+     */
+    boolean mergeFiles(String source, String destination, String filePattern, boolean byMtime,
+                       boolean skipHeader) throws IOException {
+        FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+        FileSystemManager manager = FileConnectorVFS.getManager();
+        FileObject sourceFolder = manager.resolveFile(source, opts);
+        FileObject destFile = manager.resolveFile(destination, opts);
+        if (!sourceFolder.exists() || sourceFolder.getType() != FileType.FOLDER) {
+            throw new IOException("The folder " + source + " does not exist.");
+        }
+        // all children come from the file system of the folder, so a remote folder is read over one session
+        List<FileObject> files = new ArrayList<FileObject>();
+        for (FileObject child : sourceFolder.getChildren()) {
+            if (child.getType() == FileType.FILE && !child.getName().equals(destFile.getName())
+                    && (filePattern == null || filePattern.trim().equals("")
+                    || new FilePattenMatcher(filePattern).validate(child.getName().getBaseName()))) {
+                files.add(child);
+            }
+        }
+        FileObject[] ordered = files.toArray(new FileObject[files.size()]);
+        if (byMtime) {
+            Map<FileObject, Long> times = new HashMap<FileObject, Long>();
+            for (FileObject file : ordered) {
+                times.put(file, file.getContent().getLastModifiedTime());
+            }
+            Arrays.sort(ordered, new MtimeComparator(times));
+        } else {
+            Arrays.sort(ordered, new NameComparator());
+        }
+        if (ordered.length == 0) {
+            log.warn("No file of " + source + " matches the pattern " + filePattern + ", nothing is merged.");
+            return false;
+        }
+        File localDest = LocalFileUtil.getLocalFile(destFile);
+        OutputStream out;
+        WritableByteChannel target;
+        if (localDest != null) {
+            if (!localDest.getParentFile().exists()) {
+                destFile.getParent().createFolder();
+            }
+            FileOutputStream fileOut = new FileOutputStream(localDest);
+            out = fileOut;
+            target = fileOut.getChannel();
+        } else {
+            out = destFile.getContent().getOutputStream();
+            target = Channels.newChannel(out);
+        }
+        try {
+            // the header of the first file, null when the headers are kept
+            byte[][] header = new byte[1][];
+            for (int i = 0; i < ordered.length; i++) {
+                File localFile = LocalFileUtil.getLocalFile(ordered[i]);
+                boolean lastLineTerminated;
+                if (localFile != null) {
+                    lastLineTerminated = transferFile(localFile, target, skipHeader, i == 0, header);
+                } else {
+                    lastLineTerminated = streamFile(ordered[i], out, skipHeader, i == 0, header);
+                }
+                if (skipHeader && !lastLineTerminated && i < ordered.length - 1) {
+                    // keep the first row of the next file on its own line
+                    target.write(ByteBuffer.wrap(new byte[]{'\n'}));
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Merged " + ordered.length + " files into " + destination);
+        }
+        return true;
+    }
+
+    /**
+     * Transfer a local file to the destination channel, zero copy when the destination is also local
+     *
+     * @param skipHeader Whether the headers are de-duplicated
+     * @param first      Whether the file is the first one, its first line is then kept as the header
+     * @param header     The header of the first file, set when the first file is merged
+     * @return return true if the file ends with a line feed
+     */
+    private boolean transferFile(File file, WritableByteChannel target, boolean skipHeader, boolean first,
+                                 byte[][] header) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long position = 0;
+            if (skipHeader) {
+                ByteBuffer start = ByteBuffer.allocate((int) Math.min(size, MAX_HEADER_SIZE));
+                while (start.hasRemaining() && channel.read(start, start.position()) > 0) {
+                    // read the start of the file, where the header is
+                }
+                byte[] line = getFirstLine(start.array(), start.position());
+                if (first) {
+                    header[0] = line;
+                } else if (isHeader(line, header[0])) {
+                    position = line.length;
+                }
+            }
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    // nothing is transferred past the end of the file, which would loop forever
+                    throw new IOException("Unexpected end of " + file + " at " + position + " of " + size
+                            + " bytes, the file was changed during the merge.");
+                }
+                position += transferred;
+            }
+            if (size == 0) {
+                return true;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            return last.get(0) == '\n';
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return return the first line with its line feed, or null if there is no line feed in the bytes
+     */
+    private byte[] getFirstLine(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                return Arrays.copyOf(bytes, i + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return return true if the line is the header, whatever their line endings (LF or CRLF)
+     */
+    private boolean isHeader(byte[] line, byte[] header) {
+        if (line == null || header == null) {
+            return false;
+        }
+        int length = getContentLength(line);
+        if (length != getContentLength(header)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[i] != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int getContentLength(byte[] line) {
+        int length = line.length - 1;
+        return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    /**
+     * Stream a file to the destination
+     *
+     * @param skipHeader Whether the headers are de-duplicated
+     * @param first      Whether the file is the first one, its first line is then kept as the header
+     * @param header     The header of the first file, set when the first file is merged
+     * @return return true if the file ends with a line feed
+     */
+    private boolean streamFile(FileObject file, OutputStream out, boolean skipHeader, boolean first,
+                               byte[][] header) throws IOException {
+        InputStream in = new BufferedInputStream(file.getContent().getInputStream(), MAX_HEADER_SIZE);
+        try {
+            int last = '\n';
+            if (skipHeader) {
+                in.mark(MAX_HEADER_SIZE);
+                byte[] start = new byte[MAX_HEADER_SIZE];
+                int length = 0;
+                int read;
+                while (length < start.length && (read = in.read(start, length, start.length - length)) != -1) {
+                    length += read;
+                }
+                in.reset();
+                byte[] line = getFirstLine(start, length);
+                if (first) {
+                    header[0] = line;
+                } else if (isHeader(line, header[0])) {
+                    long skipped = 0;
+                    while (skipped < line.length) {
+                        skipped += in.skip(line.length - skipped);
+                    }
+                }
+            }
+            byte[] buffer = new byte[FileConstants.BUFFER_SIZE * 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (read > 0) {
+                    out.write(buffer, 0, read);
+                    last = buffer[read - 1];
+                }
+            }
+            return last == '\n';
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class NameComparator implements Comparator<FileObject> {
+        public int compare(FileObject file1, FileObject file2) {
+            return file1.getName().getBaseName().compareTo(file2.getName().getBaseName());
+        }
+    }
+
+    private static class MtimeComparator implements Comparator<FileObject> {
+        private final Map<FileObject, Long> times;
+
+        MtimeComparator(Map<FileObject, Long> times) {
+            this.times = times;
+        }
+
+        public int compare(FileObject file1, FileObject file2) {
+            int result = times.get(file1).compareTo(times.get(file2));
+            return result != 0 ? result : file1.getName().getBaseName().compareTo(file2.getName().getBaseName());
+        }
+    }
+}
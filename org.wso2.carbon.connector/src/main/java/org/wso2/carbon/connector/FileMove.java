@@ -19,23 +19,25 @@ package org.wso2.carbon.connector;
 
 import java.io.File;
 import java.io.IOException;
-import javax.xml.stream.XMLStreamException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.*;
 import org.apache.synapse.MessageContext;
-import org.codehaus.jettison.json.JSONException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.NioFileUtil;
 import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
-public class FileMove extends AbstractConnector implements Connector {
+public class FileMove extends AbstractFileConnector implements Connector {
     private static Log log = LogFactory.getLog(FileMove.class);
 
     public void connect(MessageContext messageContext) throws ConnectException {
@@ -61,20 +63,9 @@ public class FileMove extends AbstractConnector implements Connector {
      */
     private void generateResults(MessageContext messageContext, boolean resultStatus) {
         ResultPayloadCreate resultPayload = new ResultPayloadCreate();
-        String response = "<result><success>" + resultStatus + "</success></result>";
-        try {
-            OMElement element = resultPayload.performSearchMessages(response);
-            resultPayload.preparePayload(messageContext, element);
-        } catch (XMLStreamException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (JSONException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        }
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.SUCCESS,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
     }
 
     /**
@@ -87,8 +78,29 @@ public class FileMove extends AbstractConnector implements Connector {
     private boolean moveFile(String source, String destination, MessageContext messageContext) throws IOException {
         boolean resultStatus = false;
         try {
+            Path sourcePath = NioFileUtil.toPath(source);
+            Path destinationPath = NioFileUtil.toPath(destination);
+            if (sourcePath != null && destinationPath != null) {
+                BasicFileAttributes attributes = NioFileUtil.getAttributes(sourcePath);
+                if (attributes == null) {
+                    log.error("The file/folder location does not exist.");
+                    return false;
+                }
+                if (NioFileUtil.getAttributes(destinationPath) == null) {
+                    Files.createDirectories(destinationPath);
+                }
+                Path target = attributes.isDirectory() ? destinationPath
+                        : destinationPath.resolve(sourcePath.getFileName().toString());
+                if (NioFileUtil.move(sourcePath, target)) {
+                    FileConnectorVFS.evictTree(source);
+                    FileConnectorVFS.evictTree(attributes.isDirectory() ? destination
+                            : destination + File.separator + sourcePath.getFileName());
+                    return true;
+                }
+                // a folder onto a folder that is not empty, or onto another file system
+            }
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
-            FileSystemManager manager = VFS.getManager();
+            FileSystemManager manager = FileConnectorVFS.getManager();
             // Create remote object
             FileObject remoteFile = manager.resolveFile(source, opts);
             if (remoteFile.exists()) {
@@ -98,10 +110,13 @@ public class FileMove extends AbstractConnector implements Connector {
                 }
                 if(remoteFile.getType()== FileType.FOLDER) {
                     remoteFile.moveTo(file);
+                    FileConnectorVFS.evict(file);
                 }else if(remoteFile.getType()==FileType.FILE){
                     FileObject newFile = manager.resolveFile(destination+ File.separator+remoteFile.getName().getBaseName(), opts);
                     remoteFile.moveTo(newFile);
+                    FileConnectorVFS.evict(newFile);
                 }
+                FileConnectorVFS.evict(remoteFile);
                 resultStatus = true;
             } else {
                 log.error("The file/folder location does not exist.");
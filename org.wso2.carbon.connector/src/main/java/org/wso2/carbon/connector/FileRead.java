@@ -17,22 +17,56 @@
  */
 package org.wso2.carbon.connector;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axis2.transport.TransportUtils;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileSystemManager;
 import org.apache.commons.vfs2.FileSystemOptions;
 import org.apache.commons.vfs2.FileType;
-import org.apache.commons.vfs2.VFS;
+import org.apache.commons.vfs2.NameScope;
+import org.apache.synapse.Mediator;
 import org.apache.synapse.MessageContext;
-import org.wso2.carbon.connector.core.AbstractConnector;
+import org.apache.synapse.util.MessageHelper;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileCheckpointStore;
+import org.wso2.carbon.connector.util.FileConnectorConfig;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FileRecordReader;
+import org.wso2.carbon.connector.util.FolderScanner;
+import org.wso2.carbon.connector.util.LocalFileUtil;
 import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
-public class FileRead extends AbstractConnector implements Connector {
+public class FileRead extends AbstractFileConnector implements Connector {
+    private static final String READ_MODE_TAIL = "tail";
+    private static final String READ_MODE_RECORDS = "records";
+    private static final String READ_MODE_LINES = "lines";
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final String OFFSET = "offset";
+    private static final String FILE_KEY = "fileKey";
+    private static final String HEAD_LENGTH = "headLength";
+    private static final String HEAD_DIGEST = "headDigest";
+    private static final int HEAD_SIZE = 1024;
+    private static final int DEFAULT_CANDIDATES = 8;
 
     public void connect(MessageContext messageContext) throws ConnectException {
         String fileLocation = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
@@ -42,6 +76,10 @@ public class FileRead extends AbstractConnector implements Connector {
         String streaming = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.STREAMING);
         String filePattern = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
                 FileConstants.FILE_PATTERN);
+        String readMode = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.READ_MODE);
+        String checkpointKey = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.CHECKPOINT_KEY);
+        String fileOrder = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.FILE_ORDER);
 
         if (log.isDebugEnabled()) {
             log.info("File read start with" + fileLocation);
@@ -50,32 +88,12 @@ public class FileRead extends AbstractConnector implements Connector {
         FileObject fileObj = null;
         FileSystemManager fsManager = null;
         try {
-            fsManager = VFS.getManager();
+            fsManager = FileConnectorVFS.getManager();
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
             fileObj = fsManager.resolveFile(fileLocation, opts);
             if (fileObj.exists()) {
                 if (fileObj.getType() == FileType.FOLDER) {
-                    FileObject[] children = fileObj.getChildren();
-                    if (children == null || children.length == 0) {
-                        log.warn("Empty folder.");
-                        handleException("Empty folder.", messageContext);
-                    }
-                    if (filePattern != null && !filePattern.trim().equals("")) {
-                        boolean bFound = false;
-                        for (FileObject child : children) {
-                            if (child.getName().getBaseName().matches(filePattern)) {
-                                fileObj = child;
-                                bFound = true;
-                                break;
-                            }
-                        }
-                        if (!bFound) {
-                            log.warn("File does not exists for the mentioned pattern.");
-                            handleException("File does not exists for the mentioned pattern.", messageContext);
-                        }
-                    } else {
-                        fileObj = children[0];
-                    }
+                    fileObj = getFolderEntry(fileObj, filePattern, fileOrder, messageContext);
                 } else if (fileObj.getType() != FileType.FILE) {
                     log.warn("File does not exists, or an empty folder.");
                     handleException("File does not exists, or an empty folder.", messageContext);
@@ -84,7 +102,15 @@ public class FileRead extends AbstractConnector implements Connector {
                 log.warn("File/Folder does not exists");
                 handleException("File/Folder does not exists", messageContext);
             }
-            ResultPayloadCreate.buildFile(fileObj, messageContext, contentType, streaming);
+            if (READ_MODE_TAIL.equals(readMode)) {
+                tailFile(fileObj, checkpointKey, messageContext, contentType);
+            } else if (READ_MODE_RECORDS.equals(readMode)) {
+                readRecords(fileObj, messageContext, contentType);
+            } else if (READ_MODE_LINES.equals(readMode)) {
+                readLines(fileObj, messageContext);
+            } else {
+                ResultPayloadCreate.buildFile(fileObj, messageContext, contentType, streaming);
+            }
         } catch (Exception e) {
             handleException(e.getMessage(), messageContext);
         } finally {
@@ -104,4 +130,306 @@ public class FileRead extends AbstractConnector implements Connector {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the entry of the folder to read, without listing the whole folder: the first entry matching the
+     * pattern, or with fileOrder the matching file first by name or oldest. A few entries are kept, so that
+     * the next one is taken when the first was removed (e.g. by another reader) before it is opened.
+     *
+     * @param folder         The folder
+     * @param filePattern    Regular expression the name matches
+     * @param fileOrder      name, oldest, or empty for the listing order
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @return return the entry
+     * @throws IOException
+     */
+    private FileObject getFolderEntry(FileObject folder, String filePattern, String fileOrder,
+                                      MessageContext messageContext) throws IOException {
+        List<String> names = FolderScanner.scan(folder, filePattern, fileOrder,
+                FileConnectorConfig.getIntProperty("read.scan.candidates", DEFAULT_CANDIDATES));
+        for (String name : names) {
+            FileObject child = folder.resolveFile(name, NameScope.CHILD);
+            if (child.exists()) {
+                return child;
+            }
+        }
+        if (filePattern != null && !filePattern.trim().equals("")) {
+            log.warn("File does not exists for the mentioned pattern.");
+            handleException("File does not exists for the mentioned pattern.", messageContext);
+        }
+        log.warn("Empty folder.");
+        handleException("Empty folder.", messageContext);
+        return null;
+    }
+
+    /**
+     * Read the bytes appended to the file since the last tail read, and checkpoint the new offset.
+     * The file is read from the start again when it is truncated, or replaced (rotated) by a file with
+     * another inode or other first bytes.
+     *
+     * @param file           File to read
+     * @param checkpointKey  Key of the checkpoint, defaults to the file URI
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param contentType    Content type of the file
+     * @throws IOException
+     */
+    private void tailFile(FileObject file, String checkpointKey, MessageContext messageContext, String contentType)
+            throws IOException {
+        String key = checkpointKey == null || checkpointKey.trim().equals("") ? file.getName().getFriendlyURI()
+                : checkpointKey.trim();
+        synchronized (FileCheckpointStore.getLock(key)) {
+            Properties checkpoint = FileCheckpointStore.load(key);
+            long size = file.getContent().getSize();
+            long offset = Long.parseLong(checkpoint.getProperty(OFFSET, "0"));
+            int headLength = Integer.parseInt(checkpoint.getProperty(HEAD_LENGTH, "0"));
+            String fileKey = getFileKey(file);
+            String headDigest = null;
+            boolean reset = false;
+            if (offset > size) {
+                reset = true;
+            } else if (fileKey != null && checkpoint.getProperty(FILE_KEY) != null
+                    && !fileKey.equals(checkpoint.getProperty(FILE_KEY))) {
+                reset = true;
+            } else if (headLength > 0) {
+                headDigest = getHeadDigest(file, headLength);
+                reset = !headDigest.equals(checkpoint.getProperty(HEAD_DIGEST));
+            }
+            if (reset) {
+                if (log.isDebugEnabled()) {
+                    log.debug("The file " + file + " is truncated or rotated, reading from the start.");
+                }
+                offset = 0;
+                headDigest = null;
+            }
+            ResultPayloadCreate.buildFile(file, LocalFileUtil.openInputStream(file, offset, size - offset),
+                    messageContext, contentType);
+            messageContext.setProperty(FileConstants.TAIL_OFFSET, String.valueOf(offset));
+            messageContext.setProperty(FileConstants.TAIL_LENGTH, String.valueOf(size - offset));
+            messageContext.setProperty(FileConstants.TAIL_RESET, String.valueOf(reset));
+
+            checkpoint.setProperty(OFFSET, String.valueOf(size));
+            if (fileKey != null) {
+                checkpoint.setProperty(FILE_KEY, fileKey);
+            }
+            int newHeadLength = (int) Math.min(size, HEAD_SIZE);
+            if (headDigest == null || newHeadLength != headLength) {
+                headDigest = getHeadDigest(file, newHeadLength);
+            }
+            checkpoint.setProperty(HEAD_LENGTH, String.valueOf(newHeadLength));
+            checkpoint.setProperty(HEAD_DIGEST, headDigest);
+            FileCheckpointStore.save(key, checkpoint);
+        }
+    }
+
+    /**
+     * Read the records of a XML or JSON file in batches. Without a callback sequence, the batch starting at
+     * startRecord becomes the payload. With a callback sequence, every batch of the file is mediated through
+     * the sequence as a copy of the message, and the payload gives the number of records and batches.
+     * Only one batch is held in memory at a time. Without a callback, every call parses the records before
+     * startRecord again, so paging through a whole file costs a time quadratic in its number of batches;
+     * the callback sequence goes through the file in a single pass.
+     *
+     * @param file           File to read
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param contentType    Content type of the file
+     * @throws IOException
+     */
+    private void readRecords(FileObject file, MessageContext messageContext, String contentType)
+            throws IOException {
+        String recordPath = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.RECORD_PATH);
+        String callback = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.CALLBACK);
+        int batchSize = getIntParameter(messageContext, FileConstants.BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        long startRecord = getLongParameter(messageContext, FileConstants.START_RECORD, 0);
+        boolean json = contentType != null ? contentType.toLowerCase().contains("json")
+                : "json".equalsIgnoreCase(file.getName().getExtension());
+        Mediator sequence = null;
+        if (callback != null && !callback.trim().equals("")) {
+            sequence = messageContext.getSequence(callback.trim());
+            if (sequence == null) {
+                throw new IOException("Sequence " + callback + " does not exist.");
+            }
+        }
+        FileRecordReader reader = FileRecordReader.create(LocalFileUtil.openInputStream(file), json, recordPath,
+                null);
+        try {
+            long index = 0;
+            while (index < startRecord && reader.next() != null) {
+                index++;
+            }
+            OMFactory factory = ResultPayloadCreate.getFactory();
+            OMNamespace ns = ResultPayloadCreate.getNamespace();
+            long batches = 0;
+            boolean eof = false;
+            while (!eof) {
+                OMElement batch = factory.createOMElement(FileConstants.RESULT, ns);
+                long batchStart = index;
+                for (int i = 0; i < batchSize; i++) {
+                    OMElement record = reader.next();
+                    if (record == null) {
+                        eof = true;
+                        break;
+                    }
+                    batch.addChild(record);
+                    index++;
+                }
+                if (sequence == null) {
+                    messageContext.setEnvelope(TransportUtils.createSOAPEnvelope(batch));
+                    messageContext.setProperty(FileConstants.RECORD_NEXT, String.valueOf(index));
+                    messageContext.setProperty(FileConstants.RECORD_EOF, String.valueOf(eof || reader.next() == null));
+                    return;
+                }
+                if (index > batchStart) {
+                    MessageContext batchContext = MessageHelper.cloneMessageContext(messageContext);
+                    batchContext.setEnvelope(TransportUtils.createSOAPEnvelope(batch));
+                    batchContext.setProperty(FileConstants.RECORD_START, String.valueOf(batchStart));
+                    sequence.mediate(batchContext);
+                    batches++;
+                }
+            }
+            OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+            factory.createOMElement(FileConstants.RECORDS, ns, result).setText(String.valueOf(index - startRecord));
+            factory.createOMElement(FileConstants.BATCHES, ns, result).setText(String.valueOf(batches));
+            messageContext.setEnvelope(TransportUtils.createSOAPEnvelope(result));
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read the next batch of lines, starting at the byte offset given by the cursor parameter. The payload
+     * holds the lines, the cursor to pass to the next call and whether the end of the file is reached,
+     * e.g. &lt;result&gt;&lt;line&gt;a,b&lt;/line&gt;&lt;cursor&gt;4&lt;/cursor&gt;&lt;eof&gt;true&lt;/eof&gt;&lt;/result&gt;
+     * The file is opened at the cursor, so no call reads the lines before it again.
+     *
+     * @param file           File to read
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @throws IOException
+     */
+    private void readLines(FileObject file, MessageContext messageContext) throws IOException {
+        String encoding = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.ENCODING);
+        String skipHeader = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.SKIP_HEADER);
+        int batchSize = getIntParameter(messageContext, FileConstants.BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        long cursor = getLongParameter(messageContext, FileConstants.CURSOR, 0);
+        Charset charset = Charset.forName(encoding == null || encoding.trim().equals("") ? "UTF-8"
+                : encoding.trim());
+        long size = file.getContent().getSize();
+        if (cursor > size) {
+            throw new IOException("The cursor " + cursor + " is beyond the end of the file.");
+        }
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
+        OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+        InputStream in = LocalFileUtil.openInputStream(file, cursor, size - cursor);
+        try {
+            byte[] buffer = new byte[FileConstants.BUFFER_SIZE * 16];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            boolean header = cursor == 0 && Boolean.parseBoolean(skipHeader);
+            int lines = 0;
+            int position = 0;
+            int limit = 0;
+            // bytes read past the last returned line are dropped, the next call opens the file at the cursor
+            while (lines < batchSize && cursor < size) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit == -1) {
+                        // the file ended before its stat'ed size, the partial line is read again by the next call
+                        cursor -= line.size();
+                        break;
+                    }
+                }
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                line.write(buffer, start, position - start);
+                cursor += position - start;
+                boolean complete = position < limit;
+                if (complete) {
+                    position++;
+                    cursor++;
+                } else if (cursor < size) {
+                    continue;
+                }
+                if (header) {
+                    header = false;
+                } else {
+                    addLine(factory, ns, result, line.toByteArray(), charset);
+                    lines++;
+                }
+                line.reset();
+            }
+        } finally {
+            in.close();
+        }
+        factory.createOMElement(FileConstants.CURSOR, ns, result).setText(String.valueOf(cursor));
+        factory.createOMElement(FileConstants.EOF, ns, result).setText(String.valueOf(cursor >= size));
+        messageContext.setEnvelope(TransportUtils.createSOAPEnvelope(result));
+    }
+
+    private void addLine(OMFactory factory, OMNamespace ns, OMElement result, byte[] bytes, Charset charset) {
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        factory.createOMElement(FileConstants.LINE, ns, result).setText(new String(bytes, 0, length, charset));
+    }
+
+    private int getIntParameter(MessageContext messageContext, String name, int defaultValue) throws IOException {
+        return (int) getLongParameter(messageContext, name, defaultValue);
+    }
+
+    private long getLongParameter(MessageContext messageContext, String name, long defaultValue)
+            throws IOException {
+        String value = (String) ConnectorUtils.lookupTemplateParamater(messageContext, name);
+        if (value == null || value.trim().equals("")) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number < 0) {
+                throw new IOException("The " + name + " should not be negative.");
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid " + name + " : " + value);
+        }
+    }
+
+    /**
+     * @return return the file system key (e.g. device and inode) of a local file, or null if there is none
+     */
+    private String getFileKey(FileObject file) throws IOException {
+        File localFile = LocalFileUtil.getLocalFile(file);
+        if (localFile == null) {
+            return null;
+        }
+        Object fileKey = Files.readAttributes(localFile.toPath(), BasicFileAttributes.class).fileKey();
+        return fileKey == null ? null : fileKey.toString();
+    }
+
+    /**
+     * @return return the hex MD5 digest of the first bytes of the file
+     */
+    private String getHeadDigest(FileObject file, int length) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 is not available.");
+        }
+        InputStream in = LocalFileUtil.openInputStream(file, 0, length);
+        try {
+            byte[] buffer = new byte[length];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+}
@@ -18,8 +18,10 @@
 package org.wso2.carbon.connector;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
 
-import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.apache.axiom.om.OMNamespace;
@@ -27,15 +29,18 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.*;
 import org.apache.synapse.MessageContext;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
 import org.wso2.carbon.connector.util.FileConstants;
 import org.wso2.carbon.connector.util.FilePattenMatcher;
+import org.wso2.carbon.connector.util.FileTreeWalker;
+import org.wso2.carbon.connector.util.NioFileUtil;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
-public class FileSearch extends AbstractConnector implements Connector {
+public class FileSearch extends AbstractFileConnector implements Connector {
     private static Log log = LogFactory.getLog(FileSearch.class);
 
     public void connect(MessageContext messageContext) throws ConnectException {
@@ -69,19 +74,24 @@ public class FileSearch extends AbstractConnector implements Connector {
             log.error("Both filePattern and dirPattern should not be null, at least one of them should have value.");
         } else {
             try {
+                Path path = NioFileUtil.toPath(source);
+                if (path != null) {
+                    searchLocalFolder(path, filePattern, dirPattern, messageContext);
+                    return;
+                }
                 FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
-                FileSystemManager manager = VFS.getManager();
+                FileSystemManager manager = FileConnectorVFS.getManager();
                 FileObject remoteFile = manager.resolveFile(source, opts);
                 if (remoteFile.exists()) {
-                    FileObject[] children = remoteFile.getChildren();
+                    FileTreeWalker walker = new FileTreeWalker(remoteFile, Selectors.SELECT_ALL, 1, false);
                     FILE_PATTERN = filePattern;
                     DIR_PATTERN = dirPattern;
-                    OMFactory factory = OMAbstractFactory.getOMFactory();
+                    OMFactory factory = ResultPayloadCreate.getFactory();
                     String outputResult;
-                    OMNamespace ns = factory.createOMNamespace(FileConstants.FILECON,
-                            FileConstants.NAMESPACE);
+                    OMNamespace ns = ResultPayloadCreate.getNamespace();
                     OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
-                    for (FileObject child : children) {
+                    FileObject child;
+                    while ((child = walker.next()) != null) {
                         if (child.getType() == FileType.FILE && filePattern != null &&
                                 new FilePattenMatcher(FILE_PATTERN).validate(child.getName().getBaseName()
                                         .toLowerCase())) {
@@ -107,4 +117,31 @@ public class FileSearch extends AbstractConnector implements Connector {
             }
         }
     }
+
+    /**
+     * Search a local folder, taking the type of the entries from the listing
+     *
+     * @param folder         The local folder
+     * @param filePattern    Pattern of the file
+     * @param dirPattern     Pattern of the directory
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @throws IOException
+     */
+    private void searchLocalFolder(Path folder, String filePattern, String dirPattern,
+                                   MessageContext messageContext) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            log.error("File location does not exist.");
+            return;
+        }
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
+        OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+        for (Map.Entry<String, Boolean> entry : NioFileUtil.search(folder, filePattern, dirPattern).entrySet()) {
+            OMElement messageElement = factory.createOMElement(entry.getValue() ? FileConstants.DIR
+                    : FileConstants.FILE, ns);
+            messageElement.setText(entry.getKey());
+            result.addChild(messageElement);
+        }
+        messageContext.getEnvelope().getBody().addChild(result);
+    }
 }
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.synapse.MessageContext;
+import org.wso2.carbon.connector.core.ConnectException;
+import org.wso2.carbon.connector.core.Connector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorConfig;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
+import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FileWorkerPool;
+import org.wso2.carbon.connector.util.LocalFileUtil;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
+
+/**
+ * Sort a text/CSV file by a key column or by the whole line, with a bounded memory external merge sort.
+ * The file is cut into runs which are sorted in parallel and spilled to the scratch folder, then the runs
+ * are merged into the destination. The memory used is set by sort.memory, the scratch folder by
+ * sort.scratchDir. With dedup set to true only the first line of every key is kept.
+ */
+public class FileSort extends AbstractFileConnector implements Connector {
+    private static final String DEFAULT_DELIMITER = ",";
+    private static final long DEFAULT_SORT_MEMORY = 256L * 1024 * 1024;
+    private static final int MAX_MERGE_RUNS = 128;
+    // rough heap cost of a line on top of its characters
+    private static final int LINE_OVERHEAD = 64;
+    private static Log log = LogFactory.getLog(FileSort.class);
+
+    public void connect(MessageContext messageContext) throws ConnectException {
+        String source = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_LOCATION);
+        String destination = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.NEW_FILE_LOCATION);
+        String keyColumn = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.KEY_COLUMN);
+        String delimiter = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.DELIMITER);
+        String skipHeader = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.SKIP_HEADER);
+        String dedup = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.DEDUP);
+        String encoding = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.ENCODING);
+        boolean resultStatus = false;
+        try {
+            int column = 0;
+            if (keyColumn != null && !keyColumn.trim().equals("")) {
+                column = Integer.parseInt(keyColumn.trim());
+                if (column < 1) {
+                    handleException("The keyColumn should be 1 or more.", messageContext);
+                }
+            }
+            LineComparator comparator = new LineComparator(column,
+                    delimiter == null || delimiter.equals("") ? DEFAULT_DELIMITER : delimiter);
+            Charset charset = Charset.forName(encoding == null || encoding.trim().equals("") ? "UTF-8"
+                    : encoding.trim());
+            resultStatus = sortFile(source, destination, comparator, Boolean.parseBoolean(skipHeader),
+                    Boolean.parseBoolean(dedup), charset);
+        } catch (NumberFormatException e) {
+            handleException("Invalid keyColumn : " + keyColumn, e, messageContext);
+        } catch (IOException e) {
+            handleException("Unable to sort the file.", e, messageContext);
+        }
+        generateResults(messageContext, resultStatus);
+    }
+
+    /**
+     * Generate the result
+     *
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param resultStatus   Result of the status (true/false)
+     */
+    private void generateResults(MessageContext messageContext, boolean resultStatus) {
+        ResultPayloadCreate resultPayload = new ResultPayloadCreate();
+        OMElement element = resultPayload.createResultElement(FileConstants.RESULT, FileConstants.SUCCESS,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
+    }
+
+    /**
+     * Sort the file
+     *
+     * @param source      Location of the file
+     * @param destination Location of the sorted file
+     * @param comparator  Order of the lines
+     * @param skipHeader  Keep the first line on top, out of the sort
+     * @param dedup       Keep only the first line of every key
+     * @param charset     Character set of the file
+     * @return return true if the file is sorted
+     * @throws IOException
+     */
+    boolean sortFile(String source, String destination, LineComparator comparator, boolean skipHeader,
+                     boolean dedup, Charset charset) throws IOException {
+        FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+        FileSystemManager manager = FileConnectorVFS.getManager();
+        FileObject sourceFile = manager.resolveFile(source, opts);
+        FileObject destFile = manager.resolveFile(destination, opts);
+        if (!sourceFile.exists() || sourceFile.getType() != FileType.FILE) {
+            throw new IOException("The file " + source + " does not exist.");
+        }
+        File scratchDir = new File(FileConnectorConfig.getProperty("sort.scratchDir",
+                System.getProperty("java.io.tmpdir")));
+        int parallelism = FileWorkerPool.getParallelism();
+        // the runs being sorted plus the one being read share the memory
+        long runSize = FileConnectorConfig.getLongProperty("sort.memory", DEFAULT_SORT_MEMORY) / (parallelism + 1);
+        List<File> runs = new ArrayList<File>();
+        List<Future<File>> pending = new LinkedList<Future<File>>();
+        String header = null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(LocalFileUtil.openInputStream(sourceFile),
+                charset), FileConstants.BUFFER_SIZE * 16);
+        try {
+            if (skipHeader) {
+                header = reader.readLine();
+            }
+            List<String> lines = new ArrayList<String>();
+            long size = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                size += line.length() * 2 + LINE_OVERHEAD;
+                if (size >= runSize) {
+                    if (pending.size() >= parallelism) {
+                        runs.add(getRun(pending.remove(0)));
+                    }
+                    pending.add(submitRun(lines, comparator, dedup, scratchDir, charset));
+                    lines = new ArrayList<String>();
+                    size = 0;
+                }
+            }
+            if (pending.isEmpty()) {
+                // fits in memory, no spill
+                sortLines(lines, comparator, dedup);
+                writeLines(destFile, header, lines, charset);
+                return true;
+            }
+            if (!lines.isEmpty()) {
+                pending.add(submitRun(lines, comparator, dedup, scratchDir, charset));
+            }
+            while (!pending.isEmpty()) {
+                runs.add(getRun(pending.remove(0)));
+            }
+            while (runs.size() > MAX_MERGE_RUNS) {
+                // merge in passes, to bound the open files and the merge buffers
+                List<File> merged = new ArrayList<File>();
+                try {
+                    for (int i = 0; i < runs.size(); i += MAX_MERGE_RUNS) {
+                        List<File> group = runs.subList(i, Math.min(i + MAX_MERGE_RUNS, runs.size()));
+                        File run = File.createTempFile("fileconnector-sort-", ".run", scratchDir);
+                        merged.add(run);
+                        mergeRuns(group, new FileOutputStream(run), null, comparator, dedup, charset);
+                    }
+                } catch (IOException e) {
+                    deleteRuns(merged);
+                    throw e;
+                }
+                deleteRuns(runs);
+                runs = merged;
+            }
+            createParent(destFile);
+            mergeRuns(runs, destFile.getContent().getOutputStream(), header, comparator, dedup, charset);
+            if (log.isDebugEnabled()) {
+                log.debug("Sorted " + source + " with " + runs.size() + " runs.");
+            }
+            return true;
+        } finally {
+            reader.close();
+            for (Future<File> future : pending) {
+                try {
+                    runs.add(future.get());
+                } catch (Exception e) {
+                    // the run failed, nothing to clean up
+                }
+            }
+            deleteRuns(runs);
+        }
+    }
+
+    private Future<File> submitRun(final List<String> lines, final LineComparator comparator, final boolean dedup,
+                                   final File scratchDir, final Charset charset) {
+        return FileWorkerPool.getExecutor().submit(new Callable<File>() {
+            public File call() throws IOException {
+                sortLines(lines, comparator, dedup);
+                File run = File.createTempFile("fileconnector-sort-", ".run", scratchDir);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), charset),
+                        FileConstants.BUFFER_SIZE * 16);
+                try {
+                    for (String line : lines) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                } finally {
+                    writer.close();
+                }
+                return run;
+            }
+        });
+    }
+
+    private File getRun(Future<File> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sorting the file.");
+        } catch (ExecutionException e) {
+            IOException exception = new IOException("Unable to sort a run of the file.");
+            exception.initCause(e.getCause());
+            throw exception;
+        }
+    }
+
+    /**
+     * Sort the lines in place, the sort is stable so dedup keeps the first line of a key
+     */
+    private void sortLines(List<String> lines, LineComparator comparator, boolean dedup) {
+        Collections.sort(lines, comparator);
+        if (dedup && lines.size() > 1) {
+            List<String> unique = new ArrayList<String>(lines.size());
+            String previous = null;
+            for (String line : lines) {
+                if (previous == null || comparator.compare(previous, line) != 0) {
+                    unique.add(line);
+                }
+                previous = line;
+            }
+            lines.clear();
+            lines.addAll(unique);
+        }
+    }
+
+    private void writeLines(FileObject destFile, String header, List<String> lines, Charset charset)
+            throws IOException {
+        createParent(destFile);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(destFile.getContent().getOutputStream(), charset),
+                FileConstants.BUFFER_SIZE * 16);
+        try {
+            if (header != null) {
+                writer.write(header);
+                writer.write('\n');
+            }
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * K-way merge of sorted runs. Runs are taken in order on equal keys, which keeps the sort stable.
+     */
+    private void mergeRuns(List<File> runs, OutputStream out, String header, LineComparator comparator,
+                           boolean dedup, Charset charset) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(runs.size(), new RunComparator(comparator));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset), FileConstants.BUFFER_SIZE * 16);
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader run = new RunReader(runs.get(i), i, charset);
+                if (run.line != null) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            if (header != null) {
+                writer.write(header);
+                writer.write('\n');
+            }
+            String previous = null;
+            while (!queue.isEmpty()) {
+                RunReader run = queue.poll();
+                if (!dedup || previous == null || comparator.compare(previous, run.line) != 0) {
+                    writer.write(run.line);
+                    writer.write('\n');
+                }
+                previous = run.line;
+                if (run.next() != null) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+        } finally {
+            for (RunReader run : queue) {
+                run.close();
+            }
+            writer.close();
+        }
+    }
+
+    private void createParent(FileObject file) throws IOException {
+        if (file.getParent() != null && !file.getParent().exists()) {
+            file.getParent().createFolder();
+        }
+    }
+
+    private void deleteRuns(List<File> runs) {
+        for (File run : runs) {
+            if (run.exists() && !run.delete()) {
+                log.warn("Unable to delete the sort run " + run);
+            }
+        }
+    }
+
+    /**
+     * Compares lines by a delimited column (1 based), or by the whole line when the column is 0
+     */
+    static class LineComparator implements Comparator<String> {
+        private final int column;
+        private final String delimiter;
+
+        LineComparator(int column, String delimiter) {
+            this.column = column;
+            this.delimiter = delimiter;
+        }
+
+        public int compare(String line1, String line2) {
+            if (column == 0) {
+                return line1.compareTo(line2);
+            }
+            return compareKeys(line1, line2);
+        }
+
+        private int compareKeys(String line1, String line2) {
+            int start1 = columnStart(line1);
+            int start2 = columnStart(line2);
+            int end1 = columnEnd(line1, start1);
+            int end2 = columnEnd(line2, start2);
+            int length1 = end1 - start1;
+            int length2 = end2 - start2;
+            for (int i = 0; i < Math.min(length1, length2); i++) {
+                char c1 = line1.charAt(start1 + i);
+                char c2 = line2.charAt(start2 + i);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            return length1 - length2;
+        }
+
+        private int columnStart(String line) {
+            int start = 0;
+            for (int i = 1; i < column; i++) {
+                int index = line.indexOf(delimiter, start);
+                if (index < 0) {
+                    // missing columns sort as empty keys
+                    return line.length();
+                }
+                start = index + delimiter.length();
+            }
+            return start;
+        }
+
+        private int columnEnd(String line, int start) {
+            int end = line.indexOf(delimiter, start);
+            return end < 0 ? line.length() : end;
+        }
+    }
+
+    private static class RunComparator implements Comparator<RunReader> {
+        private final LineComparator comparator;
+
+        RunComparator(LineComparator comparator) {
+            this.comparator = comparator;
+        }
+
+        public int compare(RunReader run1, RunReader run2) {
+            int result = comparator.compare(run1.line, run2.line);
+            return result != 0 ? result : run1.index - run2.index;
+        }
+    }
+
+    private static class RunReader {
+        private final BufferedReader reader;
+        private final int index;
+        private String line;
+
+        RunReader(File run, int index, Charset charset) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(run), charset),
+                    FileConstants.BUFFER_SIZE * 16);
+            this.index = index;
+            this.line = reader.readLine();
+        }
+
+        String next() throws IOException {
+            line = reader.readLine();
+            return line;
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+    }
+}
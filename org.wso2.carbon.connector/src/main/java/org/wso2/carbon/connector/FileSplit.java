@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.synapse.MessageContext;
+import org.wso2.carbon.connector.core.ConnectException;
+import org.wso2.carbon.connector.core.Connector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
+import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FileWorkerPool;
+import org.wso2.carbon.connector.util.LocalFileUtil;
+import org.wso2.carbon.connector.util.MappedFile;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
+
+/**
+ * Split a file into chunks of a given size (splitMode size, the default) or line count (splitMode lines, a
+ * record is a line). Chunks always end at a line boundary.
+ * Local sources are scanned for the split points first, and the chunks are then written concurrently.
+ * Other sources are split in a single streaming pass.
+ */
+public class FileSplit extends AbstractFileConnector implements Connector {
+    private static final String SPLIT_MODE_LINES = "lines";
+    private static final String SPLIT_MODE_SIZE = "size";
+    private static Log log = LogFactory.getLog(FileSplit.class);
+
+    public void connect(MessageContext messageContext) throws ConnectException {
+        String source = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_LOCATION);
+        String destination = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.NEW_FILE_LOCATION);
+        String splitMode = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.SPLIT_MODE);
+        String chunkSize = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.CHUNK_SIZE);
+        if (splitMode != null && !splitMode.equals("") && !SPLIT_MODE_LINES.equals(splitMode)
+                && !SPLIT_MODE_SIZE.equals(splitMode)) {
+            handleException("Invalid splitMode : " + splitMode + ", it should be size or lines.", messageContext);
+        }
+        if (chunkSize == null || chunkSize.trim().equals("")) {
+            handleException("The chunkSize is required.", messageContext);
+        }
+        try {
+            long size = Long.parseLong(chunkSize.trim());
+            if (size <= 0) {
+                handleException("The chunkSize should be a positive number.", messageContext);
+            }
+            List<Chunk> chunks = splitFile(source, destination, SPLIT_MODE_LINES.equals(splitMode), size);
+            generateResults(messageContext, chunks);
+        } catch (NumberFormatException e) {
+            handleException("Invalid chunkSize : " + chunkSize, e, messageContext);
+        } catch (IOException e) {
+            handleException("Unable to split the file.", e, messageContext);
+        }
+    }
+
+    /**
+     * Generate the result with the list of chunks
+     *
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param chunks         Written chunks
+     */
+    private void generateResults(MessageContext messageContext, List<Chunk> chunks) {
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
+        OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+        for (Chunk chunk : chunks) {
+            OMElement chunkElement = factory.createOMElement(FileConstants.CHUNK, ns, result);
+            OMElement fileElement = factory.createOMElement(FileConstants.FILE, ns, chunkElement);
+            fileElement.setText(chunk.name);
+            OMElement sizeElement = factory.createOMElement(FileConstants.SIZE, ns, chunkElement);
+            sizeElement.setText(String.valueOf(chunk.size));
+        }
+        messageContext.getEnvelope().getBody().addChild(result);
+    }
+
+    /**
+     * Split the file
+     *
+     * @param source      Location of the file
+     * @param destination Folder to write the chunks to
+     * @param byLines     Split by line count instead of size
+     * @param chunkSize   Lines or bytes per chunk
+     * @return return the written chunks
+     * @throws IOException
+     */
+    List<Chunk> splitFile(String source, String destination, boolean byLines, long chunkSize)
+            throws IOException {
+        FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+        FileSystemManager manager = FileConnectorVFS.getManager();
+        FileObject sourceFile = manager.resolveFile(source, opts);
+        FileObject destFolder = manager.resolveFile(destination, opts);
+        if (!sourceFile.exists() || sourceFile.getType() != FileType.FILE) {
+            throw new IOException("The file " + source + " does not exist.");
+        }
+        if (!destFolder.exists()) {
+            destFolder.createFolder();
+        }
+        File localFile = LocalFileUtil.getLocalFile(sourceFile);
+        if (localFile != null) {
+            return splitLocalFile(localFile, destFolder, byLines, chunkSize);
+        }
+        return splitStream(sourceFile, destFolder, byLines, chunkSize);
+    }
+
+    /**
+     * Find the split points on the memory mapped file, then write the chunks concurrently
+     */
+    private List<Chunk> splitLocalFile(final File source, FileObject destFolder, boolean byLines, long chunkSize)
+            throws IOException {
+        List<Long> points = new ArrayList<Long>();
+        MappedFile mappedFile = new MappedFile(source);
+        try {
+            long size = mappedFile.size();
+            long start = 0;
+            points.add(start);
+            while (start < size) {
+                long end;
+                if (byLines) {
+                    end = start;
+                    for (long lines = 0; lines < chunkSize && end < size; lines++) {
+                        long lineFeed = mappedFile.indexOf((byte) '\n', end);
+                        end = lineFeed < 0 ? size : lineFeed + 1;
+                    }
+                } else if (start + chunkSize >= size) {
+                    end = size;
+                } else {
+                    long lineFeed = mappedFile.indexOf((byte) '\n', start + chunkSize - 1);
+                    end = lineFeed < 0 ? size : lineFeed + 1;
+                }
+                points.add(end);
+                start = end;
+            }
+        } finally {
+            mappedFile.close();
+        }
+        List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+        for (int i = 1; i < points.size(); i++) {
+            final long start = points.get(i - 1);
+            final long end = points.get(i);
+            final FileObject chunkFile = destFolder.resolveFile(getChunkName(source.getName(), i));
+            futures.add(FileWorkerPool.getExecutor().submit(new Callable<Chunk>() {
+                public Chunk call() throws IOException {
+                    writeChunk(source, start, end, chunkFile);
+                    return new Chunk(chunkFile.getName().getBaseName(), end - start);
+                }
+            }));
+        }
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (Future<Chunk> future : futures) {
+            try {
+                chunks.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing the chunks.");
+            } catch (ExecutionException e) {
+                IOException exception = new IOException("Unable to write a chunk.");
+                exception.initCause(e.getCause());
+                throw exception;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Copy a byte range of the source into a chunk, with a zero copy transfer when the chunk is local
+     */
+    private void writeChunk(File source, long start, long end, FileObject chunkFile) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(source, "r");
+        OutputStream out = null;
+        try {
+            File localChunk = LocalFileUtil.getLocalFile(chunkFile);
+            WritableByteChannel target;
+            if (localChunk != null) {
+                FileOutputStream fileOut = new FileOutputStream(localChunk);
+                out = fileOut;
+                target = fileOut.getChannel();
+            } else {
+                out = chunkFile.getContent().getOutputStream();
+                target = Channels.newChannel(out);
+            }
+            FileChannel channel = in.getChannel();
+            long position = start;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    // nothing is transferred past the end of the file, which would loop forever
+                    throw new IOException("Unexpected end of " + source + " at " + position + " of "
+                            + channel.size() + " bytes, the file was changed during the split.");
+                }
+                position += transferred;
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            in.close();
+        }
+    }
+
+    /**
+     * Split the file in one streaming pass, for sources which can not be read at random positions
+     */
+    private List<Chunk> splitStream(FileObject source, FileObject destFolder, boolean byLines, long chunkSize)
+            throws IOException {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        InputStream in = new BufferedInputStream(source.getContent().getInputStream());
+        OutputStream out = null;
+        FileObject chunkFile = null;
+        try {
+            byte[] buffer = new byte[FileConstants.BUFFER_SIZE * 16];
+            long written = 0;
+            long lines = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int start = 0;
+                while (start < read) {
+                    if (out == null) {
+                        chunkFile = destFolder.resolveFile(getChunkName(source.getName().getBaseName(),
+                                chunks.size() + 1));
+                        out = chunkFile.getContent().getOutputStream();
+                        written = 0;
+                        lines = 0;
+                    }
+                    int end = read;
+                    boolean boundary = false;
+                    for (int i = start; i < read; i++) {
+                        if (buffer[i] == '\n') {
+                            lines++;
+                            if (byLines ? lines >= chunkSize : written + i - start + 1 >= chunkSize) {
+                                end = i + 1;
+                                boundary = true;
+                                break;
+                            }
+                        }
+                    }
+                    out.write(buffer, start, end - start);
+                    written += end - start;
+                    start = end;
+                    if (boundary) {
+                        out.close();
+                        out = null;
+                        chunks.add(new Chunk(chunkFile.getName().getBaseName(), written));
+                    }
+                }
+            }
+            if (out != null) {
+                out.close();
+                out = null;
+                chunks.add(new Chunk(chunkFile.getName().getBaseName(), written));
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            in.close();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Split " + source + " into " + chunks.size() + " chunks.");
+        }
+        return chunks;
+    }
+
+    /**
+     * Get the chunk name, e.g. data_0001.csv for data.csv
+     */
+    private String getChunkName(String fileName, int index) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot > 0) {
+            return String.format("%s_%04d%s", fileName.substring(0, dot), index, fileName.substring(dot));
+        }
+        return String.format("%s_%04d", fileName, index);
+    }
+
+    private static class Chunk {
+        private final String name;
+        private final long size;
+
+        Chunk(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+    }
+}
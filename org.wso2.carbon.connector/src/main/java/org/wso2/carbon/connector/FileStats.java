@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.synapse.MessageContext;
+import org.wso2.carbon.connector.core.ConnectException;
+import org.wso2.carbon.connector.core.Connector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+import org.wso2.carbon.connector.util.FTPSiteUtils;
+import org.wso2.carbon.connector.util.FileConnectorVFS;
+import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FilePattenMatcher;
+import org.wso2.carbon.connector.util.FileWorkerPool;
+import org.wso2.carbon.connector.util.ResultPayloadCreate;
+
+/**
+ * Get the statistics of a folder tree: total size, file and folder counts, oldest and newest modification
+ * time and a size histogram, optionally grouped by file extension or by top level sub folder.
+ * The folders are listed in parallel on the worker pool, and only the attributes returned by the listings
+ * are used, no file is opened.
+ */
+public class FileStats extends AbstractFileConnector implements Connector {
+    private static final String GROUP_BY_EXTENSION = "extension";
+    private static final String GROUP_BY_FOLDER = "folder";
+    private static final long[] BUCKETS = {0, 1024, 64 * 1024, 1024 * 1024, 16 * 1024 * 1024,
+            256 * 1024 * 1024, 1024 * 1024 * 1024, Long.MAX_VALUE};
+
+    public void connect(MessageContext messageContext) throws ConnectException {
+        String source = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_LOCATION);
+        String filePattern = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_PATTERN);
+        String recursive = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.RECURSIVE);
+        String groupBy = (String) ConnectorUtils.lookupTemplateParamater(messageContext, FileConstants.GROUP_BY);
+        if (groupBy != null && !groupBy.equals("") && !GROUP_BY_EXTENSION.equals(groupBy)
+                && !GROUP_BY_FOLDER.equals(groupBy)) {
+            handleException("Invalid groupBy : " + groupBy + ", it should be extension or folder.",
+                    messageContext);
+        }
+        try {
+            Map<String, Stats> stats = collectStats(source, filePattern,
+                    recursive == null || recursive.equals("") || Boolean.parseBoolean(recursive), groupBy);
+            generateResults(messageContext, stats);
+        } catch (IOException e) {
+            handleException("Unable to get the statistics of the folder.", e, messageContext);
+        }
+    }
+
+    /**
+     * Generate the result, the totals followed by a group element per group
+     *
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param stats          Statistics per group, the totals under the null key
+     */
+    private void generateResults(MessageContext messageContext, Map<String, Stats> stats) {
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
+        OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+        addStats(factory, ns, result, stats.remove(null));
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            OMElement group = factory.createOMElement(FileConstants.GROUP, ns, result);
+            factory.createOMElement(FileConstants.NAME, ns, group).setText(entry.getKey());
+            addStats(factory, ns, group, entry.getValue());
+        }
+        messageContext.getEnvelope().getBody().addChild(result);
+    }
+
+    private void addStats(OMFactory factory, OMNamespace ns, OMElement parent, Stats stats) {
+        factory.createOMElement(FileConstants.TOTAL_SIZE, ns, parent).setText(String.valueOf(stats.totalSize));
+        factory.createOMElement(FileConstants.FILE_COUNT, ns, parent).setText(String.valueOf(stats.fileCount));
+        if (stats.folderCount >= 0) {
+            factory.createOMElement(FileConstants.FOLDER_COUNT, ns, parent).setText(
+                    String.valueOf(stats.folderCount));
+        }
+        if (stats.fileCount > 0) {
+            factory.createOMElement(FileConstants.OLDEST, ns, parent).setText(String.valueOf(stats.oldest));
+            factory.createOMElement(FileConstants.NEWEST, ns, parent).setText(String.valueOf(stats.newest));
+        }
+        OMElement histogram = factory.createOMElement(FileConstants.HISTOGRAM, ns, parent);
+        for (int i = 0; i < stats.bucketCounts.length; i++) {
+            OMElement bucket = factory.createOMElement(FileConstants.BUCKET, ns, histogram);
+            factory.createOMElement(FileConstants.MAX_SIZE, ns, bucket).setText(
+                    BUCKETS[i + 1] == Long.MAX_VALUE ? "" : String.valueOf(BUCKETS[i + 1]));
+            factory.createOMElement(FileConstants.FILE_COUNT, ns, bucket).setText(
+                    String.valueOf(stats.bucketCounts[i]));
+            factory.createOMElement(FileConstants.TOTAL_SIZE, ns, bucket).setText(
+                    String.valueOf(stats.bucketSizes[i]));
+        }
+    }
+
+    /**
+     * Walk the tree, listing the folders in parallel
+     *
+     * @param source      Location of the folder
+     * @param filePattern Pattern of the file names to count
+     * @param recursive   Include the sub folders
+     * @param groupBy     extension, folder or null
+     * @return return the statistics per group, the totals under the null key
+     * @throws IOException
+     */
+    private Map<String, Stats> collectStats(String source, String filePattern, boolean recursive,
+                                            final String groupBy) throws IOException {
+        FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+        FileSystemManager manager = FileConnectorVFS.getManager();
+        FileObject folder = manager.resolveFile(source, opts);
+        if (!folder.exists() || folder.getType() != FileType.FOLDER) {
+            throw new IOException("The folder " + source + " does not exist.");
+        }
+        String pattern = filePattern == null || filePattern.trim().equals("") ? null : filePattern.trim();
+        Map<String, Stats> stats = new TreeMap<String, Stats>(new GroupComparator());
+        Stats totals = new Stats();
+        totals.folderCount = 0;
+        stats.put(null, totals);
+        // the walk is driven from this thread, so the pool tasks never wait on each other
+        CompletionService<Listing> completion = new ExecutorCompletionService<Listing>(FileWorkerPool.getExecutor());
+        completion.submit(listFolder(folder, "", pattern, groupBy));
+        int pending = 1;
+        try {
+            while (pending > 0) {
+                Listing listing = completion.take().get();
+                pending--;
+                for (Map.Entry<String, Stats> entry : listing.stats.entrySet()) {
+                    totals.add(entry.getValue());
+                    if (entry.getKey() != null) {
+                        Stats group = stats.get(entry.getKey());
+                        if (group == null) {
+                            group = new Stats();
+                            stats.put(entry.getKey(), group);
+                        }
+                        group.add(entry.getValue());
+                    }
+                }
+                totals.folderCount += listing.folders.size();
+                if (recursive) {
+                    for (int i = 0; i < listing.folders.size(); i++) {
+                        completion.submit(listFolder(listing.folders.get(i), listing.paths.get(i), pattern,
+                                groupBy));
+                        pending++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while walking the folder.");
+        } catch (ExecutionException e) {
+            IOException exception = new IOException("Unable to list a folder.");
+            exception.initCause(e.getCause());
+            throw exception;
+        }
+        return stats;
+    }
+
+    private Callable<Listing> listFolder(final FileObject folder, final String path, final String filePattern,
+                                         final String groupBy) {
+        return new Callable<Listing>() {
+            public Listing call() throws IOException {
+                // FilePattenMatcher is not thread safe, one per listing
+                FilePattenMatcher matcher = filePattern == null ? null : new FilePattenMatcher(filePattern);
+                Listing listing = new Listing();
+                for (FileObject child : folder.getChildren()) {
+                    String name = child.getName().getBaseName();
+                    if (child.getType() == FileType.FOLDER) {
+                        listing.folders.add(child);
+                        listing.paths.add(path + name + "/");
+                    } else if (child.getType() == FileType.FILE && (matcher == null || matcher.validate(name))) {
+                        String group = null;
+                        if (GROUP_BY_EXTENSION.equals(groupBy)) {
+                            group = child.getName().getExtension();
+                        } else if (GROUP_BY_FOLDER.equals(groupBy)) {
+                            group = path.equals("") ? "." : path.substring(0, path.indexOf('/'));
+                        }
+                        Stats stats = listing.stats.get(group);
+                        if (stats == null) {
+                            stats = new Stats();
+                            listing.stats.put(group, stats);
+                        }
+                        FileContent content = child.getContent();
+                        stats.addFile(content.getSize(), content.getLastModifiedTime());
+                    }
+                }
+                return listing;
+            }
+        };
+    }
+
+    private static class Listing {
+        private final Map<String, Stats> stats = new TreeMap<String, Stats>(new GroupComparator());
+        private final List<FileObject> folders = new ArrayList<FileObject>();
+        private final List<String> paths = new ArrayList<String>();
+    }
+
+    private static class Stats {
+        private long totalSize;
+        private long fileCount;
+        private long folderCount = -1;
+        private long oldest = Long.MAX_VALUE;
+        private long newest = Long.MIN_VALUE;
+        private final long[] bucketCounts = new long[BUCKETS.length - 1];
+        private final long[] bucketSizes = new long[BUCKETS.length - 1];
+
+        void addFile(long size, long lastModified) {
+            totalSize += size;
+            fileCount++;
+            oldest = Math.min(oldest, lastModified);
+            newest = Math.max(newest, lastModified);
+            int bucket = 0;
+            while (size > BUCKETS[bucket + 1]) {
+                bucket++;
+            }
+            bucketCounts[bucket]++;
+            bucketSizes[bucket] += size;
+        }
+
+        void add(Stats stats) {
+            totalSize += stats.totalSize;
+            fileCount += stats.fileCount;
+            oldest = Math.min(oldest, stats.oldest);
+            newest = Math.max(newest, stats.newest);
+            for (int i = 0; i < bucketCounts.length; i++) {
+                bucketCounts[i] += stats.bucketCounts[i];
+                bucketSizes[i] += stats.bucketSizes[i];
+            }
+        }
+    }
+
+    /**
+     * Orders the groups by name, with the totals (null) first
+     */
+    private static class GroupComparator implements Comparator<String> {
+        public int compare(String group1, String group2) {
+            if (group1 == null || group2 == null) {
+                return group1 == null ? (group2 == null ? 0 : -1) : 1;
+            }
+            return group1.compareTo(group2);
+        }
+    }
+}
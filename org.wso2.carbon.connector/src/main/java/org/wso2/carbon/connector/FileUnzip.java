@@ -19,23 +19,21 @@
 package org.wso2.carbon.connector;
 
 import java.io.IOException;
-import javax.xml.stream.XMLStreamException;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
-import org.codehaus.jettison.json.JSONException;
-import org.wso2.carbon.connector.core.AbstractConnector;
 import org.wso2.carbon.connector.core.ConnectException;
 import org.wso2.carbon.connector.core.Connector;
 import org.wso2.carbon.connector.core.util.ConnectorUtils;
 import org.wso2.carbon.connector.util.FileConstants;
+import org.wso2.carbon.connector.util.FileTarUtil;
 import org.wso2.carbon.connector.util.FileUnzipUtil;
 import org.wso2.carbon.connector.util.ResultPayloadCreate;
 
 
-public class FileUnzip extends AbstractConnector implements Connector {
+public class FileUnzip extends AbstractFileConnector implements Connector {
 
     private static Log log = LogFactory.getLog(FileUnzip.class);
 
@@ -44,6 +42,8 @@ public class FileUnzip extends AbstractConnector implements Connector {
                 FileConstants.FILE_LOCATION);
         String destination = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
                 FileConstants.NEW_FILE_LOCATION);
+        String archiveType = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.ARCHIVE_TYPE);
 
         if (log.isDebugEnabled()) {
             log.info("Extracting a file...");
@@ -51,7 +51,14 @@ public class FileUnzip extends AbstractConnector implements Connector {
         boolean resultStatus;
 
         try {
-            resultStatus = new FileUnzipUtil().unzip(source, destination, messageContext);
+            if (archiveType == null || archiveType.trim().equals("")) {
+                archiveType = FileTarUtil.getArchiveType(source);
+            }
+            if (FileTarUtil.isTarType(archiveType.trim())) {
+                resultStatus = new FileTarUtil().extract(source, destination, archiveType.trim(), messageContext);
+            } else {
+                resultStatus = new FileUnzipUtil().unzip(source, destination, messageContext);
+            }
         } catch (Exception e) {
             handleException(e.getMessage(), messageContext);
             resultStatus = false;
@@ -71,20 +78,9 @@ public class FileUnzip extends AbstractConnector implements Connector {
     private void generateResults(MessageContext messageContext, boolean resultStatus) {
 
         ResultPayloadCreate resultPayload = new ResultPayloadCreate();
-        String response = "<unzip><success>" + resultStatus + "</success></unzip>";
-        try {
-            OMElement element = resultPayload.performSearchMessages(response);
-            resultPayload.preparePayload(messageContext, element);
-        } catch (XMLStreamException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        } catch (JSONException e) {
-            log.error(e.getMessage());
-            handleException(e.getMessage(), messageContext);
-        }
+        OMElement element = resultPayload.createResultElement(FileConstants.UNZIP, FileConstants.SUCCESS,
+                String.valueOf(resultStatus));
+        resultPayload.preparePayload(messageContext, element);
     }
 }
 
@@ -0,0 +1,300 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.provider.GenericFileName;
+
+/**
+ * Token bucket rate limits on the bytes written by the connector, per remote host
+ * (throttle.host.&lt;host&gt;) and per operation (throttle.operation.&lt;operation&gt;, e.g.
+ * throttle.operation.FileCopy), in bytes per second. A stream limited by several buckets is held to the
+ * slowest of them. Every bucket is registered as an MBean
+ * (org.wso2.carbon.connector:type=FileConnectorThrottle,name=...) giving its rate, the bytes passed, the
+ * measured rate and the time spent waiting.
+ */
+public final class BandwidthThrottle {
+    private static final String HOST_PREFIX = "throttle.host.";
+    private static final String OPERATION_PREFIX = "throttle.operation.";
+    private static final int SLICE_SIZE = 64 * 1024;
+    private static Log log = LogFactory.getLog(BandwidthThrottle.class);
+    private static final Map<String, TokenBucket> buckets = new HashMap<String, TokenBucket>();
+
+    private BandwidthThrottle() {
+    }
+
+    /**
+     * Limit the writes to the stream with the buckets of the operation and of the hosts of the files
+     *
+     * @param out       The stream to limit
+     * @param operation Name of the operation, e.g. FileCopy
+     * @param files     Files the bytes are read from or written to
+     * @return return the limited stream, or the stream itself when no limit applies
+     */
+    public static OutputStream throttle(OutputStream out, String operation, FileObject... files) {
+        List<TokenBucket> limits = new ArrayList<TokenBucket>();
+        addBucket(limits, OPERATION_PREFIX + operation);
+        for (FileObject file : files) {
+            FileName name = file.getName();
+            if (name instanceof GenericFileName) {
+                addBucket(limits, HOST_PREFIX + ((GenericFileName) name).getHostName());
+            }
+        }
+        if (limits.isEmpty()) {
+            return out;
+        }
+        return new ThrottledOutputStream(out, limits.toArray(new TokenBucket[limits.size()]));
+    }
+
+    /**
+     * @param operation Name of the operation, e.g. FileCopy
+     * @return return true if the writes of the operation are limited, whatever the hosts
+     */
+    public static boolean isLimited(String operation) {
+        return FileConnectorConfig.getLongProperty(OPERATION_PREFIX + operation, 0) > 0;
+    }
+
+    /**
+     * @param operation Name of the operation, e.g. FileCopy
+     * @param files     Files the bytes are read from or written to
+     * @return return true if the writes of the operation or to one of the hosts of the files are limited
+     */
+    public static boolean isLimited(String operation, FileObject... files) {
+        if (isLimited(operation)) {
+            return true;
+        }
+        for (FileObject file : files) {
+            FileName name = file.getName();
+            if (name instanceof GenericFileName && FileConnectorConfig.getLongProperty(HOST_PREFIX
+                    + ((GenericFileName) name).getHostName(), 0) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop the buckets and their MBeans once the operations are undeployed
+     */
+    public static void close() {
+        synchronized (buckets) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (String key : buckets.keySet()) {
+                try {
+                    ObjectName name = getObjectName(key);
+                    if (server.isRegistered(name)) {
+                        server.unregisterMBean(name);
+                    }
+                } catch (Exception e) {
+                    log.warn("Unable to unregister the throttle metrics of " + key, e);
+                }
+            }
+            buckets.clear();
+        }
+    }
+
+    private static ObjectName getObjectName(String key) throws MalformedObjectNameException {
+        return new ObjectName("org.wso2.carbon.connector:type=FileConnectorThrottle,name=" + ObjectName.quote(key));
+    }
+
+    private static void addBucket(List<TokenBucket> limits, String key) {
+        synchronized (buckets) {
+            TokenBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                long rate = FileConnectorConfig.getLongProperty(key, 0);
+                if (rate <= 0) {
+                    return;
+                }
+                bucket = new TokenBucket(rate);
+                buckets.put(key, bucket);
+                register(key, bucket);
+            }
+            if (!limits.contains(bucket)) {
+                limits.add(bucket);
+            }
+        }
+    }
+
+    private static void register(String key, TokenBucket bucket) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName(key);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new StandardMBean(bucket, ThrottleMBean.class), name);
+            }
+        } catch (Exception e) {
+            log.warn("Unable to register the throttle metrics of " + key, e);
+        }
+    }
+
+    /**
+     * Metrics of a rate limit
+     */
+    public interface ThrottleMBean {
+        /**
+         * @return return the configured rate in bytes per second
+         */
+        long getRate();
+
+        /**
+         * @return return the measured rate over the last completed second, in bytes per second
+         */
+        long getCurrentRate();
+
+        /**
+         * @return return the number of bytes passed
+         */
+        long getBytes();
+
+        /**
+         * @return return the total time the writers waited for the limit, in milliseconds
+         */
+        long getThrottledTime();
+    }
+
+    /**
+     * Token bucket allowing a burst of one second. A writer takes its bytes even when there are not enough
+     * tokens, and then waits until the bucket is back at zero, so large writes are not starved.
+     */
+    private static final class TokenBucket implements ThrottleMBean {
+        private final long rate;
+        private double tokens;
+        private long refilled = System.nanoTime();
+        private long bytes;
+        private long throttledNanos;
+        private long windowStart = System.nanoTime();
+        private long windowBytes;
+        private long currentRate;
+
+        TokenBucket(long rate) {
+            this.rate = rate;
+            this.tokens = rate;
+        }
+
+        /**
+         * @return return the time to wait in nanoseconds
+         */
+        synchronized long take(int count) {
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - refilled) * (double) rate / 1000000000L);
+            refilled = now;
+            tokens -= count;
+            bytes += count;
+            windowBytes += count;
+            if (now - windowStart >= 1000000000L) {
+                currentRate = windowBytes * 1000000000L / (now - windowStart);
+                windowStart = now;
+                windowBytes = 0;
+            }
+            return tokens >= 0 ? 0 : (long) (-tokens * 1000000000L / rate);
+        }
+
+        /**
+         * Count the time a writer actually slept for the bucket, which may be shorter than the wait when the
+         * writer is interrupted
+         */
+        synchronized void addThrottled(long nanos) {
+            throttledNanos += nanos;
+        }
+
+        public long getRate() {
+            return rate;
+        }
+
+        public synchronized long getCurrentRate() {
+            return currentRate;
+        }
+
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        public synchronized long getThrottledTime() {
+            return throttledNanos / 1000000L;
+        }
+    }
+
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+        private final TokenBucket[] limits;
+
+        ThrottledOutputStream(OutputStream out, TokenBucket[] limits) {
+            super(out);
+            this.limits = limits;
+        }
+
+        public void write(int b) throws IOException {
+            take(1);
+            out.write(b);
+        }
+
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            // in slices, so that a large buffer does not pass as one burst followed by a long pause
+            while (length > 0) {
+                int count = Math.min(length, SLICE_SIZE);
+                take(count);
+                out.write(bytes, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        private void take(int count) throws IOException {
+            long[] waits = new long[limits.length];
+            long wait = 0;
+            for (int i = 0; i < limits.length; i++) {
+                waits[i] = limits[i].take(count);
+                wait = Math.max(wait, waits[i]);
+            }
+            if (wait > 0) {
+                long start = System.nanoTime();
+                try {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttled.");
+                } finally {
+                    // the writer was held by every bucket which asked it to wait
+                    long slept = System.nanoTime() - start;
+                    for (int i = 0; i < limits.length; i++) {
+                        if (waits[i] > 0) {
+                            limits[i].addThrottled(slept);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.cache.AbstractFilesCache;
+
+/**
+ * Cache of the file objects of the connector's file system manager, bounded over all the file systems
+ * together: the least recently used entries are dropped beyond maxEntries, and the entries older than the
+ * time to live are dropped when they are looked up, so the file object is created again with fresh
+ * attributes. With soft references the cached objects can also be reclaimed by the garbage collector under
+ * memory pressure. The dropped objects are not closed, they may still be used by running operations.
+ * The statistics are registered as an MBean (org.wso2.carbon.connector:type=FileConnectorCache).
+ */
+public class BoundedFilesCache extends AbstractFilesCache {
+    private static final String OBJECT_NAME = "org.wso2.carbon.connector:type=FileConnectorCache";
+    private static Log log = LogFactory.getLog(BoundedFilesCache.class);
+    private final int maxEntries;
+    private final long timeToLive;
+    private final boolean softReferences;
+    private final Map<Key, CacheEntry> entries;
+    private final Statistics statistics = new Statistics();
+
+    /**
+     * @param maxEntries     Maximum number of cached file objects
+     * @param timeToLive     Time in ms an entry is used before the file object is created again, 0 for no limit
+     * @param softReferences Hold the file objects with soft references
+     */
+    public BoundedFilesCache(final int maxEntries, long timeToLive, boolean softReferences) {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.softReferences = softReferences;
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+                if (size() > maxEntries) {
+                    statistics.evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public void init() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(statistics, FilesCacheMBean.class), name);
+        } catch (Exception e) {
+            log.warn("Unable to register the file cache metrics.", e);
+        }
+    }
+
+    public synchronized void putFile(FileObject file) {
+        entries.put(new Key(file.getFileSystem(), file.getName()), new CacheEntry(file, softReferences));
+    }
+
+    public synchronized boolean putFileIfAbsent(FileObject file) {
+        Key key = new Key(file.getFileSystem(), file.getName());
+        if (get(key) != null) {
+            return false;
+        }
+        entries.put(key, new CacheEntry(file, softReferences));
+        return true;
+    }
+
+    public synchronized FileObject getFile(FileSystem fileSystem, FileName name) {
+        FileObject file = get(new Key(fileSystem, name));
+        if (file == null) {
+            statistics.misses++;
+        } else {
+            statistics.hits++;
+        }
+        return file;
+    }
+
+    public synchronized void clear(FileSystem fileSystem) {
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().fileSystem == fileSystem) {
+                keys.remove();
+            }
+        }
+    }
+
+    public synchronized void close() {
+        entries.clear();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            log.warn("Unable to unregister the file cache metrics.", e);
+        }
+    }
+
+    public synchronized void removeFile(FileSystem fileSystem, FileName name) {
+        entries.remove(new Key(fileSystem, name));
+    }
+
+    /**
+     * Remove a file and everything cached under it
+     *
+     * @param fileSystem The file system of the file
+     * @param name       Name of the file or folder
+     */
+    public synchronized void removeTree(FileSystem fileSystem, FileName name) {
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            Key key = keys.next();
+            if (key.fileSystem == fileSystem && (key.name.equals(name) || key.name.isDescendent(name))) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * @return return the cached file object, or null if it is missing, reclaimed or expired
+     */
+    private FileObject get(Key key) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        FileObject file = entry.get();
+        if (file == null) {
+            entries.remove(key);
+            statistics.reclaimed++;
+        } else if (timeToLive > 0 && System.currentTimeMillis() - entry.created > timeToLive) {
+            entries.remove(key);
+            statistics.expirations++;
+            file = null;
+        }
+        return file;
+    }
+
+    /**
+     * Statistics of the cache
+     */
+    public interface FilesCacheMBean {
+        /**
+         * @return return the number of cached file objects
+         */
+        int getSize();
+
+        /**
+         * @return return the maximum number of cached file objects
+         */
+        int getMaxEntries();
+
+        /**
+         * @return return the number of lookups that found a file object
+         */
+        long getHits();
+
+        /**
+         * @return return the number of lookups that did not find a file object
+         */
+        long getMisses();
+
+        /**
+         * @return return the number of entries dropped to stay within the maximum number of entries
+         */
+        long getEvictions();
+
+        /**
+         * @return return the number of entries dropped after their time to live
+         */
+        long getExpirations();
+
+        /**
+         * @return return the number of entries reclaimed by the garbage collector
+         */
+        long getReclaimed();
+    }
+
+    private class Statistics implements FilesCacheMBean {
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long expirations;
+        private long reclaimed;
+
+        public int getSize() {
+            synchronized (BoundedFilesCache.this) {
+                return entries.size();
+            }
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public long getHits() {
+            synchronized (BoundedFilesCache.this) {
+                return hits;
+            }
+        }
+
+        public long getMisses() {
+            synchronized (BoundedFilesCache.this) {
+                return misses;
+            }
+        }
+
+        public long getEvictions() {
+            synchronized (BoundedFilesCache.this) {
+                return evictions;
+            }
+        }
+
+        public long getExpirations() {
+            synchronized (BoundedFilesCache.this) {
+                return expirations;
+            }
+        }
+
+        public long getReclaimed() {
+            synchronized (BoundedFilesCache.this) {
+                return reclaimed;
+            }
+        }
+    }
+
+    /**
+     * File name within a file system; the file system is compared by identity, as each one has its own options
+     */
+    private static final class Key {
+        private final FileSystem fileSystem;
+        private final FileName name;
+
+        Key(FileSystem fileSystem, FileName name) {
+            this.fileSystem = fileSystem;
+            this.name = name;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return fileSystem == key.fileSystem && name.equals(key.name);
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(fileSystem) * 31 + name.hashCode();
+        }
+    }
+
+    private static final class CacheEntry {
+        private final FileObject file;
+        private final SoftReference<FileObject> softFile;
+        private final long created = System.currentTimeMillis();
+
+        CacheEntry(FileObject file, boolean softReference) {
+            this.file = softReference ? null : file;
+            this.softFile = softReference ? new SoftReference<FileObject>(file) : null;
+        }
+
+        FileObject get() {
+            return softFile == null ? file : softFile.get();
+        }
+    }
+}
@@ -17,34 +17,114 @@
  */
 package org.wso2.carbon.connector.util;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileSystemOptions;
 import org.apache.commons.vfs2.provider.ftp.FtpFileSystemConfigBuilder;
 import org.apache.commons.vfs2.provider.ftps.FtpsFileSystemConfigBuilder;
 import org.apache.commons.vfs2.provider.sftp.SftpFileSystemConfigBuilder;
 
+/**
+ * File system options of the remote transports. The options are built from named transport profiles in the
+ * connector configuration (transport.&lt;profile&gt;.&lt;setting&gt;), once per profile, and reused by every
+ * operation. A setting missing from a profile is taken from the "default" profile, and then from the built in
+ * defaults. The profile of an operation is given with its transportProfile parameter.
+ * Settings : timeout, dataTimeout (ms), passiveMode, sftp.compression (e.g. zlib,none), sftp.userDirIsRoot,
+ * sftp.strictHostKeyChecking, sftp.preferredAuthentications, ftp.controlEncoding.
+ */
 public class FTPSiteUtils {
+    public static final String DEFAULT_PROFILE = "default";
+    private static final String PREFIX = "transport.";
+    private static final Map<String, FileSystemOptions> profiles = new HashMap<String, FileSystemOptions>();
+    private static final ThreadLocal<String> currentProfile = new ThreadLocal<String>();
+
     /**
-     * Get the default options for File system
+     * Get the options of the transport profile of the current operation
      *
      * @return return FileSystemOptions
      * @throws FileSystemException
      */
     public static FileSystemOptions createDefaultOptions() throws FileSystemException {
-        FileSystemOptions opts = new FileSystemOptions();
+        String profile = currentProfile.get();
+        return getOptions(profile == null ? DEFAULT_PROFILE : profile);
+    }
 
-        // SSH Key checking
-        SftpFileSystemConfigBuilder.getInstance().setStrictHostKeyChecking(opts, "no");
+    /**
+     * Set the transport profile used by the operation running on the current thread
+     *
+     * @param profile Name of the profile, or null for the default profile
+     * @return return the previous profile, to be restored once the operation completes
+     */
+    public static String setProfile(String profile) {
+        String previous = currentProfile.get();
+        if (profile == null || profile.trim().equals("")) {
+            currentProfile.remove();
+        } else {
+            currentProfile.set(profile.trim());
+        }
+        return previous;
+    }
 
-        // Root directory set to user home
-        SftpFileSystemConfigBuilder.getInstance().setUserDirIsRoot(opts, false);
+    /**
+     * Get the options of a transport profile, building them on first use
+     *
+     * @param profile Name of the profile
+     * @return return FileSystemOptions
+     * @throws FileSystemException
+     */
+    public static FileSystemOptions getOptions(String profile) throws FileSystemException {
+        synchronized (profiles) {
+            FileSystemOptions opts = profiles.get(profile);
+            if (opts == null) {
+                opts = buildOptions(profile);
+                profiles.put(profile, opts);
+            }
+            return opts;
+        }
+    }
 
+    private static FileSystemOptions buildOptions(String profile) throws FileSystemException {
+        FileSystemOptions opts = new FileSystemOptions();
+        SftpFileSystemConfigBuilder sftp = SftpFileSystemConfigBuilder.getInstance();
+        FtpFileSystemConfigBuilder ftp = FtpFileSystemConfigBuilder.getInstance();
+        FtpsFileSystemConfigBuilder ftps = FtpsFileSystemConfigBuilder.getInstance();
         // Timeout is count by Milliseconds
-        SftpFileSystemConfigBuilder.getInstance().setTimeout(opts, 100000);
-        FtpFileSystemConfigBuilder.getInstance().setPassiveMode(opts, true);
-        FtpFileSystemConfigBuilder.getInstance().setSoTimeout(opts, 100000);
-        FtpsFileSystemConfigBuilder.getInstance().setPassiveMode(opts, true);
+        int timeout = Integer.parseInt(getSetting(profile, "timeout", "100000"));
+        boolean passiveMode = Boolean.parseBoolean(getSetting(profile, "passiveMode", "true"));
 
+        // SSH Key checking
+        sftp.setStrictHostKeyChecking(opts, getSetting(profile, "sftp.strictHostKeyChecking", "no"));
+        // Root directory set to user home
+        sftp.setUserDirIsRoot(opts, Boolean.parseBoolean(getSetting(profile, "sftp.userDirIsRoot", "false")));
+        sftp.setTimeout(opts, timeout);
+        String compression = getSetting(profile, "sftp.compression", null);
+        if (compression != null) {
+            sftp.setCompression(opts, compression);
+        }
+        String authentications = getSetting(profile, "sftp.preferredAuthentications", null);
+        if (authentications != null) {
+            sftp.setPreferredAuthentications(opts, authentications);
+        }
+
+        ftp.setPassiveMode(opts, passiveMode);
+        ftp.setSoTimeout(opts, timeout);
+        ftps.setPassiveMode(opts, passiveMode);
+        String dataTimeout = getSetting(profile, "dataTimeout", null);
+        if (dataTimeout != null) {
+            ftp.setDataTimeout(opts, Integer.parseInt(dataTimeout));
+            ftps.setDataTimeout(opts, Integer.parseInt(dataTimeout));
+        }
+        String controlEncoding = getSetting(profile, "ftp.controlEncoding", null);
+        if (controlEncoding != null) {
+            ftp.setControlEncoding(opts, controlEncoding);
+        }
         return opts;
     }
+
+    private static String getSetting(String profile, String setting, String defaultValue) {
+        return FileConnectorConfig.getProperty(PREFIX + profile + "." + setting,
+                FileConnectorConfig.getProperty(PREFIX + DEFAULT_PROFILE + "." + setting, defaultValue));
+    }
 }
@@ -0,0 +1,251 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.util.Stack;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.axis2.AxisFault;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.FaultHandler;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.mediators.template.TemplateContext;
+import org.apache.synapse.util.MessageHelper;
+import org.wso2.carbon.connector.core.AbstractConnector;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+
+/**
+ * Runs connector operations on a dedicated bounded executor, so that blocking file system I/O does not hold
+ * the mediation thread. The operation works on a clone of the message, and once it completes the clone is
+ * injected into the given sequence. Failures and timeouts go to the fault handler of the calling sequence.
+ * A timed out operation is interrupted, but file system calls blocked on I/O do not all notice it: the operation
+ * may keep running (and holding its scheduler slot) until such a call returns, its result is then dropped.
+ */
+public final class FileAsyncExecutor {
+    private static final String REJECT_CALLER_RUNS = "callerRuns";
+    private static Log log = LogFactory.getLog(FileAsyncExecutor.class);
+    private static FileAsyncExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+    private final boolean callerRuns;
+
+    private FileAsyncExecutor() {
+        int threads = FileConnectorConfig.getIntProperty("async.threads", 16);
+        int queueDepth = FileConnectorConfig.getIntProperty("async.queueDepth", 1000);
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueDepth), createThreadFactory());
+        timer = Executors.newSingleThreadScheduledExecutor(createDaemonThreadFactory("file-connector-async-timer"));
+        callerRuns = REJECT_CALLER_RUNS.equals(FileConnectorConfig.getProperty("async.rejectionPolicy", "abort"));
+    }
+
+    public static synchronized FileAsyncExecutor getInstance() {
+        if (instance == null) {
+            instance = new FileAsyncExecutor();
+        }
+        return instance;
+    }
+
+    /**
+     * Stop the executor, interrupting the running operations, once the operations are undeployed
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.timer.shutdownNow();
+            instance.executor.shutdownNow();
+            instance = null;
+        }
+    }
+
+    /**
+     * Hand over the operation to the async executor
+     *
+     * @param connector      The connector to run
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @param sequenceName   Sequence to continue the mediation with, once the operation completes
+     * @return true if the operation was handed over, false if it has to run on the calling thread
+     */
+    public boolean execute(final AbstractConnector connector, MessageContext messageContext,
+                           final String sequenceName) {
+        final MessageContext asyncContext = cloneMessageContext(messageContext);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        Runnable task = new Runnable() {
+            public void run() {
+                try {
+                    String previousProfile = FTPSiteUtils.setProfile((String) ConnectorUtils
+                            .lookupTemplateParamater(asyncContext, FileConstants.TRANSPORT_PROFILE));
+                    try {
+                        TransferScheduler.Permit permit = TransferScheduler.acquire(asyncContext);
+                        try {
+                            connector.connect(asyncContext);
+                        } finally {
+                            permit.release();
+                        }
+                    } finally {
+                        FTPSiteUtils.setProfile(previousProfile);
+                    }
+                    if (done.compareAndSet(false, true)) {
+                        popTemplateContext(asyncContext);
+                        injectToSequence(asyncContext, sequenceName);
+                    }
+                } catch (Exception e) {
+                    if (done.compareAndSet(false, true)) {
+                        popTemplateContext(asyncContext);
+                        handleFault(asyncContext, e);
+                    }
+                }
+            }
+        };
+        final Future<?> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            if (callerRuns) {
+                log.warn("Async file operation queue is full, running the operation on the mediation thread.");
+                return false;
+            }
+            throw new SynapseException("Async file operation queue is full.", e);
+        }
+        final long timeout = getTimeout(connector);
+        if (timeout > 0) {
+            timer.schedule(new Runnable() {
+                public void run() {
+                    if (done.compareAndSet(false, true)) {
+                        future.cancel(true);
+                        popTemplateContext(asyncContext);
+                        handleFault(asyncContext, new SynapseException("The file operation "
+                                + connector.getClass().getSimpleName() + " timed out after " + timeout + " ms."));
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Clone the message, with its own copy of the template parameter stack. The calling template unwinds its
+     * parameters from the original message as soon as the mediation thread returns.
+     */
+    @SuppressWarnings("unchecked")
+    private MessageContext cloneMessageContext(MessageContext messageContext) {
+        try {
+            MessageContext asyncContext = MessageHelper.cloneMessageContext(messageContext);
+            Stack<TemplateContext> funcStack = (Stack<TemplateContext>) messageContext.getProperty(
+                    SynapseConstants.SYNAPSE__FUNCTION__STACK);
+            if (funcStack != null) {
+                Stack<TemplateContext> asyncStack = new Stack<TemplateContext>();
+                asyncStack.addAll(funcStack);
+                asyncContext.setProperty(SynapseConstants.SYNAPSE__FUNCTION__STACK, asyncStack);
+            }
+            return asyncContext;
+        } catch (AxisFault e) {
+            throw new SynapseException("Unable to clone the message for the async file operation.", e);
+        }
+    }
+
+    /**
+     * The operation is done with the template parameters, continue with the caller's parameters
+     */
+    private void popTemplateContext(MessageContext asyncContext) {
+        Stack<?> funcStack = (Stack<?>) asyncContext.getProperty(SynapseConstants.SYNAPSE__FUNCTION__STACK);
+        if (funcStack != null && !funcStack.isEmpty()) {
+            funcStack.pop();
+        }
+    }
+
+    private void injectToSequence(MessageContext asyncContext, String sequenceName) {
+        Mediator sequence = asyncContext.getSequence(sequenceName);
+        if (sequence instanceof SequenceMediator) {
+            asyncContext.getEnvironment().injectAsync(asyncContext, (SequenceMediator) sequence);
+        } else {
+            handleFault(asyncContext, new SynapseException("Sequence " + sequenceName + " does not exist."));
+        }
+    }
+
+    private void handleFault(MessageContext asyncContext, Exception e) {
+        log.error("Error while executing the async file operation.", e);
+        asyncContext.setProperty(SynapseConstants.ERROR_CODE, SynapseConstants.DEFAULT_ERROR);
+        asyncContext.setProperty(SynapseConstants.ERROR_MESSAGE, e.getMessage());
+        asyncContext.setProperty(SynapseConstants.ERROR_EXCEPTION, e);
+        try {
+            Stack<FaultHandler> faultStack = asyncContext.getFaultStack();
+            if (!faultStack.isEmpty()) {
+                faultStack.pop().handleFault(asyncContext, e);
+            } else {
+                Mediator faultSequence = asyncContext.getFaultSequence();
+                if (faultSequence != null) {
+                    faultSequence.mediate(asyncContext);
+                }
+            }
+        } catch (Exception faultError) {
+            log.error("Error while handling the failure of an async file operation.", faultError);
+        }
+    }
+
+    private long getTimeout(AbstractConnector connector) {
+        long timeout = FileConnectorConfig.getLongProperty("async.timeout", 0);
+        return FileConnectorConfig.getLongProperty("async.timeout." + connector.getClass().getSimpleName(),
+                timeout);
+    }
+
+    /**
+     * Use virtual threads when the runtime provides them, the pool size and the queue still bound the work.
+     */
+    private static ThreadFactory createThreadFactory() {
+        if (FileConnectorConfig.getBooleanProperty("async.virtualThreads", true)) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class)
+                        .invoke(builder, "file-connector-async-", 1L);
+                return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory")
+                        .invoke(builder);
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Virtual threads are not available, using platform threads.");
+                }
+            }
+        }
+        return createDaemonThreadFactory("file-connector-async-");
+    }
+
+    private static ThreadFactory createDaemonThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Local store of read checkpoints (e.g. the offset up to which a growing file has been read).
+ * Every key is kept in its own properties file under the checkpoint.dir folder, which is replaced
+ * atomically on save, so a checkpoint survives restarts and is never left half written. The folder defaults
+ * to repository/data/fileconnector-checkpoints of the server, outside of the temporary files.
+ */
+public final class FileCheckpointStore {
+    /**
+     * Number of locks the keys are spread over, a fixed number so that the locks do not grow with the keys
+     */
+    private static final int LOCK_STRIPES = 64;
+    private static final Object[] locks = new Object[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private FileCheckpointStore() {
+    }
+
+    /**
+     * @return return the folder of the checkpoint files
+     * @throws IOException if checkpoint.dir is not set outside of a server
+     */
+    public static File getDirectory() throws IOException {
+        String directory = FileConnectorConfig.getProperty("checkpoint.dir", "").trim();
+        if (!directory.equals("")) {
+            return new File(directory);
+        }
+        String carbonHome = System.getProperty("carbon.home");
+        if (carbonHome == null) {
+            throw new IOException("The checkpoint.dir folder is required to keep the read checkpoints.");
+        }
+        return new File(carbonHome, "repository" + File.separator + "data" + File.separator
+                + "fileconnector-checkpoints");
+    }
+
+    /**
+     * Get the lock object of a key, for callers which read and update a checkpoint as one step. Keys share a
+     * fixed set of locks, so a caller must not hold the lock of another key at the same time.
+     *
+     * @param key Checkpoint key
+     * @return return the lock
+     */
+    public static Object getLock(String key) {
+        int hash = key.hashCode();
+        // mix the high bits into the low ones used by the index, as HashMap does
+        hash ^= hash >>> 16;
+        return locks[(hash & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    /**
+     * Load a checkpoint
+     *
+     * @param key Checkpoint key
+     * @return return the checkpoint values, empty if there is no checkpoint yet
+     * @throws IOException
+     */
+    public static Properties load(String key) throws IOException {
+        Properties checkpoint = new Properties();
+        File file = getFile(key);
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                checkpoint.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Save a checkpoint, replacing the previous one
+     *
+     * @param key        Checkpoint key
+     * @param checkpoint Checkpoint values
+     * @throws IOException
+     */
+    public static void save(String key, Properties checkpoint) throws IOException {
+        File file = getFile(key);
+        File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Unable to create the checkpoint folder " + directory);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            checkpoint.store(out, key);
+        } finally {
+            out.close();
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Remove a checkpoint
+     *
+     * @param key Checkpoint key
+     * @throws IOException
+     */
+    public static void remove(String key) throws IOException {
+        getFile(key).delete();
+    }
+
+    private static File getFile(String key) throws IOException {
+        return new File(getDirectory(), digest(key) + ".properties");
+    }
+
+    /**
+     * @return return the hex SHA-1 digest of the key, so any key maps to a valid file name
+     */
+    private static String digest(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available.", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not available.", e);
+        }
+    }
+}
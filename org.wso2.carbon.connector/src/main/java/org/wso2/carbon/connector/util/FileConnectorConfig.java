@@ -0,0 +1,101 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Connector wide settings, read from file-connector-file.properties. Every key can be overridden
+ * with a system property of the same name prefixed with "fileconnector." (e.g. -Dfileconnector.async.threads=32).
+ */
+public final class FileConnectorConfig {
+    private static final String CONFIG_FILE = "file-connector-file.properties";
+    private static final String SYSTEM_PROPERTY_PREFIX = "fileconnector.";
+    private static Log log = LogFactory.getLog(FileConnectorConfig.class);
+    private static Properties properties;
+
+    private FileConnectorConfig() {
+    }
+
+    private static synchronized Properties getProperties() {
+        if (properties == null) {
+            properties = new Properties();
+            InputStream in = FileConnectorConfig.class.getClassLoader().getResourceAsStream(CONFIG_FILE);
+            if (in != null) {
+                try {
+                    properties.load(in);
+                } catch (IOException e) {
+                    log.warn("Unable to load " + CONFIG_FILE + ", using the default values.", e);
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        log.warn("Error occurred :" + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * @param key          Property name
+     * @param defaultValue Value used when the property is not set
+     * @return return the property value
+     */
+    public static String getProperty(String key, String defaultValue) {
+        String value = System.getProperty(SYSTEM_PROPERTY_PREFIX + key);
+        if (value == null) {
+            value = getProperties().getProperty(key);
+        }
+        if (value == null || value.trim().equals("")) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public static int getIntProperty(String key, int defaultValue) {
+        return (int) getLongProperty(key, defaultValue);
+    }
+
+    public static long getLongProperty(String key, long defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value " + value + " for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+}
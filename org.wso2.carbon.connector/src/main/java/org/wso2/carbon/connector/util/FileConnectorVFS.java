@@ -0,0 +1,302 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FilesCache;
+import org.apache.commons.vfs2.cache.NullFilesCache;
+import org.apache.commons.vfs2.impl.DefaultFileReplicator;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.impl.PrivilegedFileReplicator;
+import org.apache.commons.vfs2.provider.FileProvider;
+import org.apache.commons.vfs2.provider.url.UrlFileProvider;
+
+/**
+ * The file system manager of the connector. It registers the same providers as VFS.getManager, or only the
+ * providers of the schemes listed in vfs.providers when it is set.
+ * Its file objects are cached in a {@link BoundedFilesCache}, from which the operations evict the files
+ * they change or remove.
+ * The manager, the file system options and the configured endpoints (warmup.endpoints) can be prepared
+ * ahead with warmUp, so that the first operation after a deployment does not pay for them.
+ */
+public final class FileConnectorVFS {
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final long DEFAULT_CACHE_TTL = 60000;
+    private static final Map<String, String> PROVIDERS = new LinkedHashMap<String, String>();
+    private static Log log = LogFactory.getLog(FileConnectorVFS.class);
+    private static volatile DefaultFileSystemManager manager;
+    private static boolean warmedUp;
+
+    static {
+        PROVIDERS.put("file", "org.apache.commons.vfs2.provider.local.DefaultLocalFileProvider");
+        PROVIDERS.put("sftp", "org.apache.commons.vfs2.provider.sftp.SftpFileProvider");
+        PROVIDERS.put("ftp", "org.apache.commons.vfs2.provider.ftp.FtpFileProvider");
+        PROVIDERS.put("ftps", "org.apache.commons.vfs2.provider.ftps.FtpsFileProvider");
+        PROVIDERS.put("tmp", "org.apache.commons.vfs2.provider.temp.TemporaryFileProvider");
+        PROVIDERS.put("zip", "org.apache.commons.vfs2.provider.zip.ZipFileProvider");
+        PROVIDERS.put("tar", "org.apache.commons.vfs2.provider.tar.TarFileProvider");
+        PROVIDERS.put("tgz", "org.apache.commons.vfs2.provider.tar.TarFileProvider");
+        PROVIDERS.put("gz", "org.apache.commons.vfs2.provider.gzip.GzipFileProvider");
+        PROVIDERS.put("bz2", "org.apache.commons.vfs2.provider.bzip2.Bzip2FileProvider");
+        PROVIDERS.put("jar", "org.apache.commons.vfs2.provider.jar.JarFileProvider");
+        PROVIDERS.put("ram", "org.apache.commons.vfs2.provider.ram.RamFileProvider");
+        PROVIDERS.put("res", "org.apache.commons.vfs2.provider.res.ResourceFileProvider");
+        PROVIDERS.put("http", "org.apache.commons.vfs2.provider.http.HttpFileProvider");
+        PROVIDERS.put("https", "org.apache.commons.vfs2.provider.https.HttpsFileProvider");
+    }
+
+    private FileConnectorVFS() {
+    }
+
+    /**
+     * Get the file system manager, creating it on first use
+     *
+     * @return return the manager
+     * @throws FileSystemException
+     */
+    public static FileSystemManager getManager() throws FileSystemException {
+        DefaultFileSystemManager current = manager;
+        if (current == null) {
+            synchronized (FileConnectorVFS.class) {
+                current = manager;
+                if (current == null) {
+                    current = createManager();
+                    manager = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static DefaultFileSystemManager createManager() throws FileSystemException {
+        DefaultFileSystemManager fsManager = new DefaultFileSystemManager();
+        // the same replicator as the standard manager, for the archive providers
+        DefaultFileReplicator replicator = new DefaultFileReplicator();
+        fsManager.setReplicator(new PrivilegedFileReplicator(replicator));
+        fsManager.setTemporaryFileStore(replicator);
+        // other schemes are resolved as java.net.URLs, as the standard manager does
+        fsManager.setDefaultProvider(new UrlFileProvider());
+        fsManager.setFilesCache(createFilesCache());
+        String schemes = FileConnectorConfig.getProperty("vfs.providers", "").trim();
+        if (schemes.equals("")) {
+            for (String scheme : PROVIDERS.keySet()) {
+                addProvider(fsManager, scheme, false);
+            }
+        } else {
+            for (String scheme : schemes.split(",")) {
+                scheme = scheme.trim().toLowerCase();
+                if (!scheme.equals("")) {
+                    addProvider(fsManager, scheme, true);
+                }
+            }
+        }
+        if (fsManager.hasProvider("zip")) {
+            fsManager.addExtensionMap("zip", "zip");
+            fsManager.addMimeTypeMap("application/zip", "zip");
+        }
+        if (fsManager.hasProvider("tar")) {
+            fsManager.addExtensionMap("tar", "tar");
+            fsManager.addExtensionMap("tgz", "tar");
+            fsManager.addMimeTypeMap("application/x-tar", "tar");
+        }
+        if (fsManager.hasProvider("gz")) {
+            fsManager.addExtensionMap("gz", "gz");
+            fsManager.addMimeTypeMap("application/x-gzip", "gz");
+        }
+        if (fsManager.hasProvider("bz2")) {
+            fsManager.addExtensionMap("bz2", "bz2");
+        }
+        if (fsManager.hasProvider("jar")) {
+            fsManager.addExtensionMap("jar", "jar");
+            fsManager.addMimeTypeMap("application/java-archive", "jar");
+        }
+        fsManager.init();
+        return fsManager;
+    }
+
+    /**
+     * @return return the cache of vfs.cache.mode : lru (the default) or soft for a BoundedFilesCache of at most
+     * vfs.cache.maxEntries entries living vfs.cache.ttl ms, none for no cache
+     */
+    private static FilesCache createFilesCache() {
+        String mode = FileConnectorConfig.getProperty("vfs.cache.mode", "lru").trim();
+        if (mode.equalsIgnoreCase("none")) {
+            return new NullFilesCache();
+        }
+        if (!mode.equalsIgnoreCase("lru") && !mode.equalsIgnoreCase("soft")) {
+            log.warn("Unknown vfs.cache.mode " + mode + ", using lru.");
+        }
+        int maxEntries = FileConnectorConfig.getIntProperty("vfs.cache.maxEntries", DEFAULT_CACHE_SIZE);
+        long timeToLive = FileConnectorConfig.getLongProperty("vfs.cache.ttl", DEFAULT_CACHE_TTL);
+        return new BoundedFilesCache(maxEntries, timeToLive, mode.equalsIgnoreCase("soft"));
+    }
+
+    /**
+     * Drop a file from the cache of the manager, once the operation changed or removed it
+     *
+     * @param file The file
+     */
+    public static void evict(FileObject file) {
+        DefaultFileSystemManager current = manager;
+        if (current != null && file != null) {
+            current.getFilesCache().removeFile(file.getFileSystem(), file.getName());
+        }
+    }
+
+    /**
+     * Drop a local file from the cache of the manager, when it was changed or removed without a file object
+     *
+     * @param uri Location of the local file, as given to the operation
+     */
+    public static void evict(String uri) {
+        evict(uri, false);
+    }
+
+    /**
+     * Drop a local folder and the files under it from the cache of the manager, when its contents were
+     * changed without file objects
+     *
+     * @param uri Location of the local folder, as given to the operation
+     */
+    public static void evictTree(String uri) {
+        evict(uri, true);
+    }
+
+    private static void evict(String uri, boolean tree) {
+        DefaultFileSystemManager current = manager;
+        if (current == null) {
+            return;
+        }
+        try {
+            // resolved as the operations do, as plain paths and file URIs do not end up in the same file system
+            FileObject file = current.resolveFile(uri, FTPSiteUtils.createDefaultOptions());
+            FilesCache cache = current.getFilesCache();
+            if (tree && cache instanceof BoundedFilesCache) {
+                ((BoundedFilesCache) cache).removeTree(file.getFileSystem(), file.getName());
+            } else {
+                cache.removeFile(file.getFileSystem(), file.getName());
+            }
+        } catch (FileSystemException e) {
+            log.debug("Unable to evict " + uri + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Register the provider of the scheme, unless it is unknown or its libraries are missing
+     *
+     * @param configured Whether the scheme is listed in vfs.providers, a missing provider is then logged as a warning
+     */
+    private static void addProvider(DefaultFileSystemManager fsManager, String scheme, boolean configured)
+            throws FileSystemException {
+        String className = PROVIDERS.get(scheme);
+        if (className == null) {
+            log.warn("Unknown file system scheme " + scheme + " in vfs.providers, it is ignored.");
+            return;
+        }
+        FileProvider provider;
+        try {
+            provider = (FileProvider) Class.forName(className).newInstance();
+        } catch (Throwable e) {
+            // e.g. the http providers without commons-httpclient, which VFS.getManager skips as well
+            if (configured) {
+                log.warn("The provider of the " + scheme + " scheme is not available : " + e);
+            } else if (log.isDebugEnabled()) {
+                log.debug("The provider of the " + scheme + " scheme is not available : " + e);
+            }
+            return;
+        }
+        fsManager.addProvider(scheme, provider);
+    }
+
+    /**
+     * Prepare the manager, the file system options of the default transport profile and the configured
+     * endpoints: each location of warmup.endpoints is resolved (which connects to its server), and
+     * warmup.sftpSessions sessions are opened in the session pool for the SFTP ones. Runs once, failures are
+     * logged only.
+     */
+    public static void warmUp() {
+        synchronized (FileConnectorVFS.class) {
+            if (warmedUp || !FileConnectorConfig.getBooleanProperty("warmup.enabled", true)) {
+                return;
+            }
+            warmedUp = true;
+        }
+        long start = System.currentTimeMillis();
+        FileSystemManager fsManager;
+        FileSystemOptions opts;
+        try {
+            fsManager = getManager();
+            opts = FTPSiteUtils.createDefaultOptions();
+        } catch (Exception e) {
+            log.warn("Unable to create the file system manager : " + e.getMessage(), e);
+            return;
+        }
+        int sessions = FileConnectorConfig.getIntProperty("warmup.sftpSessions", 0);
+        for (String endpoint : FileConnectorConfig.getProperty("warmup.endpoints", "").split(",")) {
+            endpoint = endpoint.trim();
+            if (endpoint.equals("")) {
+                continue;
+            }
+            try {
+                FileObject file = fsManager.resolveFile(endpoint, opts);
+                file.getType();
+                if ("sftp".equals(file.getName().getScheme()) && sessions > 0) {
+                    SftpSessionPool.prefill(file, sessions);
+                }
+            } catch (Exception e) {
+                log.warn("Unable to warm up " + getFriendlyURI(fsManager, endpoint) + " : " + e.getMessage());
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("File connector warm up done in " + (System.currentTimeMillis() - start) + " ms.");
+        }
+    }
+
+    /**
+     * Close the manager once the operations are undeployed, with its file systems and its cache; a new one
+     * is created and warmed up on the next deployment
+     */
+    public static void close() {
+        synchronized (FileConnectorVFS.class) {
+            if (manager != null) {
+                manager.close();
+                manager = null;
+            }
+            warmedUp = false;
+        }
+    }
+
+    /**
+     * @return return the location without its password, for the logs
+     */
+    private static String getFriendlyURI(FileSystemManager fsManager, String uri) {
+        try {
+            return fsManager.resolveURI(uri).getFriendlyURI();
+        } catch (FileSystemException e) {
+            return "an invalid location";
+        }
+    }
+}
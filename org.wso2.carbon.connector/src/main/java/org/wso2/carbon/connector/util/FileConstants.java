@@ -28,6 +28,69 @@ public final class FileConstants {
     public static final String RESULT = "result";
     public static final String FILE = "file";
     public static final String DIR="directory";
+    public static final String SUCCESS = "success";
+    public static final String COPY = "copy";
+    public static final String FILE_EXIST = "fileExist";
+    public static final String UNZIP = "unzip";
     public static final String FILECON = "http://org.wso2.esbconnectors.FileConnector";
+    public static final String ARCHIVE_TYPE = "archiveType";
+    public static final String COMPRESSION_LEVEL = "compressionLevel";
+    public static final String PARALLEL_COMPRESSION = "parallelCompression";
+    public static final String ASYNC = "async";
+    public static final String ON_COMPLETE = "onComplete";
+    public static final String SPLIT_MODE = "splitMode";
+    public static final String CHUNK_SIZE = "chunkSize";
+    public static final String SORT_BY = "sortBy";
+    public static final String SKIP_HEADER = "skipHeader";
+    public static final String READ_MODE = "readMode";
+    public static final String CHECKPOINT_KEY = "checkpointKey";
+    public static final String TAIL_OFFSET = "FILE_TAIL_OFFSET";
+    public static final String TAIL_LENGTH = "FILE_TAIL_LENGTH";
+    public static final String TAIL_RESET = "FILE_TAIL_RESET";
+    public static final String RECURSIVE = "recursive";
+    public static final String RECORD_PATH = "recordPath";
+    public static final String BATCH_SIZE = "batchSize";
+    public static final String START_RECORD = "startRecord";
+    public static final String CALLBACK = "callback";
+    public static final String RECORDS = "records";
+    public static final String BATCHES = "batches";
+    public static final String RECORD_START = "FILE_RECORD_START";
+    public static final String RECORD_NEXT = "FILE_RECORD_NEXT";
+    public static final String RECORD_EOF = "FILE_RECORD_EOF";
+    public static final String CURSOR = "cursor";
+    public static final String LINE = "line";
+    public static final String EOF = "eof";
+    public static final String KEY_COLUMN = "keyColumn";
+    public static final String DELIMITER = "delimiter";
+    public static final String DEDUP = "dedup";
+    public static final String SEARCH_TEXT = "searchText";
+    public static final String USE_REGEX = "useRegex";
+    public static final String FIRST_MATCH_ONLY = "firstMatchOnly";
+    public static final String MATCH = "match";
+    public static final String OFFSET = "offset";
+    public static final String GROUP_BY = "groupBy";
+    public static final String GROUP = "group";
+    public static final String NAME = "name";
+    public static final String TOTAL_SIZE = "totalSize";
+    public static final String FILE_COUNT = "fileCount";
+    public static final String FOLDER_COUNT = "folderCount";
+    public static final String OLDEST = "oldest";
+    public static final String NEWEST = "newest";
+    public static final String HISTOGRAM = "histogram";
+    public static final String BUCKET = "bucket";
+    public static final String MAX_SIZE = "maxSize";
+    public static final String REPORT_OFFSET = "reportOffset";
+    public static final String IDENTICAL = "identical";
+    public static final String SEGMENTS = "segments";
+    public static final String CHECKSUM = "checksum";
+    public static final String TRANSPORT_PROFILE = "transportProfile";
+    public static final String FILE_ORDER = "fileOrder";
+    public static final String CHUNK = "chunk";
+    public static final String SIZE = "size";
+    public static final String ZIP = "zip";
+    public static final String TAR = "tar";
+    public static final String TAR_GZIP = "tar.gz";
+    public static final String TAR_BZIP2 = "tar.bz2";
+    public static final String TAR_XZ = "tar.xz";
     public static final int BUFFER_SIZE = 4096;
 }
\ No newline at end of file
@@ -54,7 +54,7 @@ public class FileObjectDataSource implements SizeAwareDataSource {
     }
 
     public InputStream getInputStream() throws IOException {
-        return file.getContent().getInputStream();
+        return LocalFileUtil.openInputStream(file);
     }
 
     public OutputStream getOutputStream() throws IOException {
@@ -0,0 +1,385 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.util.StAXUtils;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.codehaus.jettison.mapped.MappedXMLStreamReader;
+
+/**
+ * Reads the records of a XML or JSON file one at a time, without building the whole file in memory.
+ * For XML the record path is a path of element names, e.g. /orders/order, or a single name which matches
+ * the element at any depth; by default the children of the root element are the records.
+ * For JSON the record path is a path of object keys to an array, e.g. $.orders; by default the file is
+ * expected to be an array. JSON records are returned as &lt;record&gt; elements.
+ */
+public abstract class FileRecordReader {
+    public static final String RECORD = "record";
+
+    protected final OMFactory factory = ResultPayloadCreate.getFactory();
+
+    /**
+     * Open a record reader
+     *
+     * @param in         Content of the file
+     * @param json       The content is JSON instead of XML
+     * @param recordPath Path of the records
+     * @param encoding   Character encoding of the content, null for the default (UTF-8)
+     * @return return the record reader
+     * @throws IOException
+     */
+    public static FileRecordReader create(InputStream in, boolean json, String recordPath, String encoding)
+            throws IOException {
+        String path = recordPath == null ? "" : recordPath.trim();
+        if (json) {
+            return new JsonRecordReader(new BufferedReader(new InputStreamReader(in,
+                    encoding == null ? "UTF-8" : encoding)), path, in);
+        }
+        try {
+            return new XmlRecordReader(encoding == null ? StAXUtils.createXMLStreamReader(in)
+                    : StAXUtils.createXMLStreamReader(in, encoding), path, in);
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * @return return the next record, or null when there are no more records
+     * @throws IOException
+     */
+    public abstract OMElement next() throws IOException;
+
+    public abstract void close() throws IOException;
+
+    /**
+     * Copy the element the reader is positioned on, up to its end element, into an OMElement
+     */
+    protected OMElement copyElement(XMLStreamReader reader) throws XMLStreamException {
+        OMElement root = null;
+        OMElement current = null;
+        int depth = 0;
+        int event = reader.getEventType();
+        while (true) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                OMElement element = factory.createOMElement(reader.getLocalName(), createNamespace(
+                        reader.getNamespaceURI(), reader.getPrefix()), current);
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    String uri = reader.getNamespaceURI(i);
+                    String prefix = reader.getNamespacePrefix(i);
+                    if (prefix == null || prefix.equals("")) {
+                        element.declareDefaultNamespace(uri == null ? "" : uri);
+                    } else {
+                        element.declareNamespace(uri, prefix);
+                    }
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    element.addAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i),
+                            createNamespace(reader.getAttributeNamespace(i), reader.getAttributePrefix(i)));
+                }
+                if (root == null) {
+                    root = element;
+                }
+                current = element;
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (depth == 0) {
+                    return root;
+                }
+                current = (OMElement) current.getParent();
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE) {
+                factory.createOMText(current, reader.getText());
+            } else if (event == XMLStreamConstants.CDATA) {
+                factory.createOMText(current, reader.getText(), XMLStreamConstants.CDATA);
+            }
+            event = reader.next();
+        }
+    }
+
+    private OMNamespace createNamespace(String uri, String prefix) {
+        if (uri == null || uri.equals("")) {
+            return null;
+        }
+        return factory.createOMNamespace(uri, prefix == null ? "" : prefix);
+    }
+
+    protected static IOException toIOException(Exception e) {
+        IOException exception = new IOException("Unable to read the records : " + e.getMessage());
+        exception.initCause(e);
+        return exception;
+    }
+
+    private static class XmlRecordReader extends FileRecordReader {
+        private final XMLStreamReader reader;
+        private final InputStream in;
+        private final List<String> path;
+        private final boolean anyDepth;
+        private final List<String> elements = new ArrayList<String>();
+
+        XmlRecordReader(XMLStreamReader reader, String recordPath, InputStream in) {
+            this.reader = reader;
+            this.in = in;
+            this.anyDepth = recordPath.startsWith("//") || !recordPath.equals("") && !recordPath.contains("/");
+            List<String> names = new ArrayList<String>();
+            for (String name : recordPath.split("/")) {
+                if (!name.equals("")) {
+                    names.add(name);
+                }
+            }
+            this.path = names;
+        }
+
+        public OMElement next() throws IOException {
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        elements.add(reader.getLocalName());
+                        if (isRecord()) {
+                            elements.remove(elements.size() - 1);
+                            return copyElement(reader);
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        elements.remove(elements.size() - 1);
+                    }
+                }
+                return null;
+            } catch (XMLStreamException e) {
+                throw toIOException(e);
+            }
+        }
+
+        private boolean isRecord() {
+            if (path.isEmpty()) {
+                return elements.size() == 2;
+            }
+            if (anyDepth) {
+                return elements.get(elements.size() - 1).equals(path.get(path.size() - 1));
+            }
+            return elements.equals(path);
+        }
+
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                throw toIOException(e);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Walks the JSON text down to the record array, and cuts out one array element at a time
+     */
+    private static class JsonRecordReader extends FileRecordReader {
+        private final Reader reader;
+        private final InputStream in;
+        private final List<String> path;
+        private boolean started;
+        private boolean finished;
+        private int peeked = -2;
+
+        JsonRecordReader(Reader reader, String recordPath, InputStream in) {
+            this.reader = reader;
+            this.in = in;
+            String keys = recordPath.startsWith("$") ? recordPath.substring(1) : recordPath;
+            List<String> names = new ArrayList<String>();
+            for (String name : Arrays.asList(keys.split("\\."))) {
+                if (!name.equals("")) {
+                    names.add(name);
+                }
+            }
+            this.path = names;
+        }
+
+        public OMElement next() throws IOException {
+            if (!started) {
+                started = true;
+                finished = !findArray();
+            }
+            if (finished) {
+                return null;
+            }
+            int c = skipWhitespace();
+            if (c == ']') {
+                read();
+                finished = true;
+                return null;
+            }
+            StringBuilder record = new StringBuilder("{\"" + RECORD + "\":");
+            copyValue(record);
+            record.append('}');
+            c = skipWhitespace();
+            if (c == ',') {
+                read();
+            } else if (c == ']') {
+                read();
+                finished = true;
+            } else {
+                throw new IOException("Invalid JSON array, found '" + (char) c + "' after a record.");
+            }
+            try {
+                XMLStreamReader xmlReader = new MappedXMLStreamReader(new JSONObject(record.toString()));
+                while (xmlReader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                    xmlReader.next();
+                }
+                return copyElement(xmlReader);
+            } catch (JSONException e) {
+                throw toIOException(e);
+            } catch (XMLStreamException e) {
+                throw toIOException(e);
+            }
+        }
+
+        /**
+         * Move to the first element of the record array
+         *
+         * @return return false if the path does not lead to an array
+         */
+        private boolean findArray() throws IOException {
+            for (String key : path) {
+                if (skipWhitespace() != '{') {
+                    return false;
+                }
+                read();
+                boolean found = false;
+                while (!found) {
+                    int c = skipWhitespace();
+                    if (c == '}' || c == -1) {
+                        return false;
+                    }
+                    if (c == ',') {
+                        read();
+                        continue;
+                    }
+                    StringBuilder name = new StringBuilder();
+                    copyValue(name);
+                    if (skipWhitespace() != ':') {
+                        throw new IOException("Invalid JSON object, ':' is expected after " + name);
+                    }
+                    read();
+                    if (name.toString().equals("\"" + key + "\"")) {
+                        found = true;
+                    } else {
+                        copyValue(null);
+                    }
+                }
+            }
+            if (skipWhitespace() != '[') {
+                return false;
+            }
+            read();
+            return true;
+        }
+
+        /**
+         * Copy (or skip, when the target is null) one JSON value
+         */
+        private void copyValue(StringBuilder target) throws IOException {
+            int c = skipWhitespace();
+            int depth = 0;
+            boolean inString = false;
+            while (c != -1) {
+                if (inString) {
+                    if (c == '\\') {
+                        append(target, read());
+                        c = peek();
+                    } else if (c == '"') {
+                        inString = false;
+                        if (depth == 0) {
+                            append(target, read());
+                            return;
+                        }
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (depth == 0) {
+                        // end of the enclosing object or array
+                        return;
+                    }
+                    depth--;
+                    if (depth == 0) {
+                        append(target, read());
+                        return;
+                    }
+                } else if (depth == 0 && (c == ',' || c == ':' || Character.isWhitespace(c))) {
+                    return;
+                }
+                append(target, read());
+                c = peek();
+            }
+        }
+
+        private void append(StringBuilder target, int c) {
+            if (target != null && c != -1) {
+                target.append((char) c);
+            }
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c = peek();
+            while (c != -1 && Character.isWhitespace(c)) {
+                read();
+                c = peek();
+            }
+            return c;
+        }
+
+        private int peek() throws IOException {
+            if (peeked == -2) {
+                peeked = reader.read();
+            }
+            return peeked;
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            peeked = -2;
+            return c;
+        }
+
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.synapse.MessageContext;
+
+/**
+ * Archive and extract tar files, optionally compressed with gzip, bzip2 or xz.
+ * Data is streamed from the source FileObject through the codec into the destination FileObject,
+ * so no temporary files are created on either side.
+ */
+public class FileTarUtil {
+    private static Log log = LogFactory.getLog(FileTarUtil.class);
+
+    /**
+     * Find the archive type from a file name
+     *
+     * @param fileName Name of the archive file
+     * @return return the archive type, or zip if the name is not a tar archive
+     */
+    public static String getArchiveType(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return FileConstants.TAR_GZIP;
+        } else if (name.endsWith(".tar.bz2") || name.endsWith(".tbz2")) {
+            return FileConstants.TAR_BZIP2;
+        } else if (name.endsWith(".tar.xz") || name.endsWith(".txz")) {
+            return FileConstants.TAR_XZ;
+        } else if (name.endsWith(".tar")) {
+            return FileConstants.TAR;
+        }
+        return FileConstants.ZIP;
+    }
+
+    /**
+     * @param archiveType Archive type
+     * @return return true if the archive type is one of the tar types
+     */
+    public static boolean isTarType(String archiveType) {
+        return FileConstants.TAR.equals(archiveType) || FileConstants.TAR_GZIP.equals(archiveType)
+                || FileConstants.TAR_BZIP2.equals(archiveType) || FileConstants.TAR_XZ.equals(archiveType);
+    }
+
+    /**
+     * Archive a file or a folder
+     *
+     * @param source           The file/folder to be archived
+     * @param destination      Destination of the archive file
+     * @param archiveType      One of tar, tar.gz, tar.bz2, tar.xz
+     * @param compressionLevel Compression level (0-9), or -1 for the codec default
+     * @param parallel         Compress gzip blocks in parallel
+     * @throws IOException
+     */
+    public void archive(FileObject source, FileObject destination, String archiveType, int compressionLevel,
+                        boolean parallel) throws IOException {
+        TarArchiveOutputStream tos = null;
+        try {
+            OutputStream out = new BufferedOutputStream(BandwidthThrottle.throttle(
+                    destination.getContent().getOutputStream(), "FileArchives", source, destination),
+                    FileConstants.BUFFER_SIZE * 16);
+            tos = new TarArchiveOutputStream(createCompressorOutputStream(out, archiveType, compressionLevel,
+                    parallel));
+            tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            if (source.getType() == FileType.FOLDER) {
+                addFolder(source, tos);
+            } else {
+                addEntry(source, source.getName().getBaseName(), tos);
+            }
+            tos.finish();
+        } finally {
+            if (tos != null) {
+                tos.close();
+            }
+        }
+    }
+
+    /**
+     * Add the contents of a folder, entry by entry while walking the tree
+     *
+     * @param root The archived folder
+     * @param tos  Tar output stream
+     * @throws IOException
+     */
+    private void addFolder(FileObject root, TarArchiveOutputStream tos) throws IOException {
+        FileTreeWalker walker = new FileTreeWalker(root);
+        try {
+            FileObject child;
+            while ((child = walker.next()) != null) {
+                String entryName = root.getName().getRelativeName(child.getName());
+                if (child.getType() == FileType.FOLDER) {
+                    TarArchiveEntry entry = new TarArchiveEntry(entryName + "/");
+                    entry.setModTime(child.getContent().getLastModifiedTime());
+                    tos.putArchiveEntry(entry);
+                    tos.closeArchiveEntry();
+                } else if (child.getType() == FileType.FILE) {
+                    addEntry(child, entryName, tos);
+                }
+            }
+        } finally {
+            walker.close();
+        }
+    }
+
+    private void addEntry(FileObject file, String entryName, TarArchiveOutputStream tos) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(entryName);
+        entry.setSize(file.getContent().getSize());
+        entry.setModTime(file.getContent().getLastModifiedTime());
+        tos.putArchiveEntry(entry);
+        InputStream in = file.getContent().getInputStream();
+        try {
+            IOUtils.copyLarge(in, tos);
+        } finally {
+            in.close();
+        }
+        tos.closeArchiveEntry();
+    }
+
+    /**
+     * Extract a tar archive
+     *
+     * @param source         Location of the archive file
+     * @param destDirectory  Location of the destination folder
+     * @param archiveType    One of tar, tar.gz, tar.bz2, tar.xz
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @return return the status
+     * @throws IOException
+     */
+    public boolean extract(String source, String destDirectory, String archiveType, MessageContext messageContext)
+            throws IOException {
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
+        OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
+        FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
+        FileSystemManager manager = FileConnectorVFS.getManager();
+        FileObject remoteFile = manager.resolveFile(source, opts);
+        FileObject remoteDesFile = manager.resolveFile(destDirectory, opts);
+        if (!remoteFile.exists()) {
+            log.error("File does not exist.");
+            return false;
+        }
+        if (!remoteDesFile.exists()) {
+            remoteDesFile.createFolder();
+        }
+        InputStream in = new BufferedInputStream(remoteFile.getContent().getInputStream(),
+                FileConstants.BUFFER_SIZE * 16);
+        TarArchiveInputStream tis = null;
+        try {
+            tis = new TarArchiveInputStream(createCompressorInputStream(in, archiveType));
+            TarArchiveEntry entry;
+            while ((entry = tis.getNextTarEntry()) != null) {
+                FileObject entryFile = remoteDesFile.resolveFile(entry.getName());
+                if (!remoteDesFile.getName().isDescendent(entryFile.getName())) {
+                    log.warn("Skipping the entry " + entry.getName() + " which is outside the destination.");
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    entryFile.createFolder();
+                } else if (entry.isFile()) {
+                    OutputStream out = entryFile.getContent().getOutputStream();
+                    try {
+                        IOUtils.copyLarge(tis, out);
+                    } finally {
+                        out.close();
+                    }
+                    OMElement messageElement = factory.createOMElement(FileConstants.FILE, ns);
+                    messageElement.setText(entry.getName() + " | status:" + "true");
+                    result.addChild(messageElement);
+                }
+            }
+        } finally {
+            if (tis != null) {
+                tis.close();
+            } else {
+                in.close();
+            }
+        }
+        messageContext.getEnvelope().getBody().addChild(result);
+        return true;
+    }
+
+    private OutputStream createCompressorOutputStream(OutputStream out, String archiveType, int compressionLevel,
+                                                      boolean parallel) throws IOException {
+        if (FileConstants.TAR_GZIP.equals(archiveType)) {
+            if (parallel) {
+                return new ParallelGzipOutputStream(out, compressionLevel);
+            }
+            GzipParameters parameters = new GzipParameters();
+            if (compressionLevel >= 0) {
+                parameters.setCompressionLevel(Math.min(compressionLevel, 9));
+            }
+            return new GzipCompressorOutputStream(out, parameters);
+        } else if (FileConstants.TAR_BZIP2.equals(archiveType)) {
+            // bzip2 block size (100k units) is the bzip2 equivalent of the compression level
+            if (compressionLevel > 0) {
+                return new BZip2CompressorOutputStream(out, Math.min(compressionLevel, 9));
+            }
+            return new BZip2CompressorOutputStream(out);
+        } else if (FileConstants.TAR_XZ.equals(archiveType)) {
+            return new XZCompressorOutputStream(out, compressionLevel >= 0 ? Math.min(compressionLevel, 9) : 6);
+        }
+        return out;
+    }
+
+    private InputStream createCompressorInputStream(InputStream in, String archiveType) throws IOException {
+        if (FileConstants.TAR_GZIP.equals(archiveType)) {
+            // parallel gzip archives consist of several concatenated members
+            return new GzipCompressorInputStream(in, true);
+        } else if (FileConstants.TAR_BZIP2.equals(archiveType)) {
+            return new BZip2CompressorInputStream(in, true);
+        } else if (FileConstants.TAR_XZ.equals(archiveType)) {
+            return new XZCompressorInputStream(in, true);
+        }
+        return in;
+    }
+}
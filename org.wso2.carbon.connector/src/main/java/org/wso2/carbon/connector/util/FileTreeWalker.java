@@ -0,0 +1,232 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSelectInfo;
+import org.apache.commons.vfs2.FileSelector;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.Selectors;
+
+/**
+ * Walks a folder tree depth first, returning one entry per call to next, so the tree is never held in
+ * memory as a whole: only the listings of the folders on the current path are kept. The listings of the
+ * next few folders are fetched ahead on the worker pool (walker.prefetch, 0 to disable) while the caller
+ * processes the current entries.
+ * The entries can be filtered with a FileSelector (includeFile decides whether an entry is returned,
+ * traverseDescendents whether a folder is walked), limited in depth, and returned in post-order, i.e. a
+ * folder after its contents, which is the order needed to delete a tree. The root itself is not returned.
+ */
+public class FileTreeWalker {
+    private static final int DEFAULT_PREFETCH = 4;
+    private final FileObject root;
+    private final FileSelector selector;
+    private final int maxDepth;
+    private final boolean postOrder;
+    private final int prefetch;
+    private final LinkedList<Frame> stack = new LinkedList<Frame>();
+    private final Map<FileObject, Future<FileObject[]>> prefetched =
+            new IdentityHashMap<FileObject, Future<FileObject[]>>();
+    private int depth;
+
+    /**
+     * Walk every entry below the root, folders before their contents
+     *
+     * @param root The folder to walk
+     */
+    public FileTreeWalker(FileObject root) {
+        this(root, Selectors.SELECT_ALL, -1, false);
+    }
+
+    /**
+     * @param root      The folder to walk
+     * @param selector  Selects the returned entries and the walked folders
+     * @param maxDepth  Depth of the deepest returned entries (1 for the children of the root), -1 for no limit
+     * @param postOrder Return the folders after their contents
+     */
+    public FileTreeWalker(FileObject root, FileSelector selector, int maxDepth, boolean postOrder) {
+        this.root = root;
+        this.selector = selector;
+        this.maxDepth = maxDepth;
+        this.postOrder = postOrder;
+        this.prefetch = FileConnectorConfig.getIntProperty("walker.prefetch", DEFAULT_PREFETCH);
+        stack.addFirst(new Frame(root, 0, false));
+    }
+
+    /**
+     * Get the next entry
+     *
+     * @return return the next file or folder, or null at the end of the tree
+     * @throws IOException
+     */
+    public FileObject next() throws IOException {
+        while (!stack.isEmpty()) {
+            Frame frame = stack.getFirst();
+            if (frame.children == null) {
+                frame.children = list(frame.folder);
+                prefetch(frame);
+            }
+            if (frame.index < frame.children.length) {
+                FileObject child = frame.children[frame.index];
+                // let the listing go as soon as possible
+                frame.children[frame.index++] = null;
+                int childDepth = frame.depth + 1;
+                SelectInfo info = new SelectInfo(child, childDepth);
+                boolean include = includeFile(info);
+                if (isWalked(child, info)) {
+                    stack.addFirst(new Frame(child, childDepth, include));
+                    if (postOrder) {
+                        continue;
+                    }
+                }
+                if (include) {
+                    depth = childDepth;
+                    return child;
+                }
+            } else {
+                stack.removeFirst();
+                if (postOrder && frame.include) {
+                    depth = frame.depth;
+                    return frame.folder;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return return the depth of the last returned entry, 1 for the children of the root
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Stop the walk, cancelling the listings fetched ahead
+     */
+    public void close() {
+        for (Future<FileObject[]> future : prefetched.values()) {
+            future.cancel(true);
+        }
+        prefetched.clear();
+        stack.clear();
+    }
+
+    private boolean isWalked(FileObject file, SelectInfo info) throws IOException {
+        if ((maxDepth >= 0 && info.depth >= maxDepth) || file.getType() != FileType.FOLDER) {
+            return false;
+        }
+        try {
+            return selector.traverseDescendents(info);
+        } catch (Exception e) {
+            throw toIOException(e);
+        }
+    }
+
+    private boolean includeFile(SelectInfo info) throws IOException {
+        try {
+            return selector.includeFile(info);
+        } catch (Exception e) {
+            throw toIOException(e);
+        }
+    }
+
+    private FileObject[] list(FileObject folder) throws IOException {
+        Future<FileObject[]> future = prefetched.remove(folder);
+        if (future == null) {
+            return folder.getChildren();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing " + folder.getName().getFriendlyURI());
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        }
+    }
+
+    /**
+     * List the sub folders of the frame ahead, in the order they will be walked
+     */
+    private void prefetch(Frame frame) throws IOException {
+        for (int i = 0; i < frame.children.length && prefetched.size() < prefetch; i++) {
+            final FileObject child = frame.children[i];
+            if (isWalked(child, new SelectInfo(child, frame.depth + 1))) {
+                prefetched.put(child, FileWorkerPool.getExecutor().submit(new Callable<FileObject[]>() {
+                    public FileObject[] call() throws IOException {
+                        return child.getChildren();
+                    }
+                }));
+            }
+        }
+    }
+
+    private static IOException toIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        IOException exception = new IOException("Unable to walk the folder : " + cause.getMessage());
+        exception.initCause(cause);
+        return exception;
+    }
+
+    private static class Frame {
+        private final FileObject folder;
+        private final int depth;
+        private final boolean include;
+        private FileObject[] children;
+        private int index;
+
+        Frame(FileObject folder, int depth, boolean include) {
+            this.folder = folder;
+            this.depth = depth;
+            this.include = include;
+        }
+    }
+
+    private class SelectInfo implements FileSelectInfo {
+        private final FileObject file;
+        private final int depth;
+
+        SelectInfo(FileObject file, int depth) {
+            this.file = file;
+            this.depth = depth;
+        }
+
+        public FileObject getBaseFolder() {
+            return root;
+        }
+
+        public FileObject getFile() {
+            return file;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+    }
+}
@@ -18,7 +18,6 @@
 
 package org.wso2.carbon.connector.util;
 
-import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.apache.axiom.om.OMNamespace;
@@ -43,13 +42,13 @@ public class FileUnzipUtil {
      */
     public boolean unzip(String source, String destDirectory, MessageContext messageContext) throws
             SynapseException, IOException {
-        OMFactory factory = OMAbstractFactory.getOMFactory();
-        OMNamespace ns = factory.createOMNamespace(FileConstants.FILECON, FileConstants.NAMESPACE);
+        OMFactory factory = ResultPayloadCreate.getFactory();
+        OMNamespace ns = ResultPayloadCreate.getNamespace();
         OMElement result = factory.createOMElement(FileConstants.RESULT, ns);
         boolean resultStatus = false;
         try {
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
-            FileSystemManager manager = VFS.getManager();
+            FileSystemManager manager = FileConnectorVFS.getManager();
             // Create remote object
             FileObject remoteFile = manager.resolveFile(source, opts);
             FileObject remoteDesFile = manager.resolveFile(destDirectory, opts);
@@ -115,11 +114,12 @@ public class FileUnzipUtil {
         BufferedOutputStream bos = null;
         try {
             FileSystemOptions opts = FTPSiteUtils.createDefaultOptions();
-            FileSystemManager manager = VFS.getManager();
+            FileSystemManager manager = FileConnectorVFS.getManager();
             // Create remote object
             FileObject remoteFilePath = manager.resolveFile(filePath, opts);
             //open the zip file
-            OutputStream fOut = remoteFilePath.getContent().getOutputStream();
+            OutputStream fOut = BandwidthThrottle.throttle(remoteFilePath.getContent().getOutputStream(),
+                    "FileUnzip", remoteFilePath);
             bos = new BufferedOutputStream(fOut);
             byte[] bytesIn = new byte[FileConstants.BUFFER_SIZE];
 
@@ -0,0 +1,254 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileType;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * Finds the entries of a folder to read without holding its whole listing: local folders are read through a
+ * DirectoryStream and SFTP folders through a pooled channel, entry by entry. In listing order the scan stops
+ * at the first matches. Ordered by name or by oldest modification time, the whole folder is scanned but only
+ * the best few entries are kept, in a bounded heap. Other file systems, and SFTP servers the session pool
+ * cannot connect to, are listed through VFS.
+ */
+public final class FolderScanner {
+    private static final String SFTP_SCHEME = "sftp";
+    private static Log log = LogFactory.getLog(FolderScanner.class);
+
+    private FolderScanner() {
+    }
+
+    /**
+     * Get the first entries of a folder
+     *
+     * @param folder  The folder
+     * @param pattern Regular expression the entry names match, or null for every entry
+     * @param order   name, oldest, or null for the listing order
+     * @param count   Maximum number of entries to return
+     * @return return the names of the entries, first one first. Ordered, only the files are returned.
+     * @throws IOException
+     */
+    public static List<String> scan(FileObject folder, String pattern, String order, int count)
+            throws IOException {
+        Collector collector = new Collector(pattern == null || pattern.trim().equals("") ? null
+                : Pattern.compile(pattern), getComparator(order), Math.max(1, count));
+        File localFolder = LocalFileUtil.getLocalFile(folder);
+        if (localFolder != null) {
+            scanLocal(localFolder.toPath(), collector);
+        } else if (!SFTP_SCHEME.equals(folder.getName().getScheme()) || !scanSftp(folder, collector)) {
+            scanVfs(folder, collector);
+        }
+        return collector.getNames();
+    }
+
+    private static void scanVfs(FileObject folder, Collector collector) throws IOException {
+        for (FileObject child : folder.getChildren()) {
+            String name = child.getName().getBaseName();
+            if (collector.isFull()) {
+                break;
+            }
+            if (!collector.matches(name)) {
+                continue;
+            }
+            if (collector.isOrdered()) {
+                if (child.getType() == FileType.FILE) {
+                    collector.add(name, child.getContent().getLastModifiedTime());
+                }
+            } else {
+                collector.add(name, 0);
+            }
+        }
+    }
+
+    private static void scanLocal(Path folder, Collector collector) throws IOException {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(folder);
+        try {
+            for (Path entry : stream) {
+                String name = entry.getFileName().toString();
+                if (!collector.matches(name)) {
+                    continue;
+                }
+                if (collector.isOrdered()) {
+                    BasicFileAttributes attributes = NioFileUtil.getAttributes(entry);
+                    if (attributes != null && attributes.isRegularFile()) {
+                        collector.add(name, attributes.lastModifiedTime().toMillis());
+                    }
+                } else {
+                    collector.add(name, 0);
+                    if (collector.isFull()) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * @return return false if no pooled channel can be opened to the server, the folder is then not scanned
+     */
+    private static boolean scanSftp(FileObject folder, final Collector collector) throws IOException {
+        ChannelSftp sftp;
+        try {
+            sftp = SftpSessionPool.open(folder);
+        } catch (IOException e) {
+            log.debug("Listing " + folder.getName().getFriendlyURI() + " through VFS : " + e.getMessage());
+            return false;
+        }
+        boolean broken = true;
+        try {
+            sftp.ls(SftpSessionPool.getPath(folder), new ChannelSftp.LsEntrySelector() {
+                public int select(ChannelSftp.LsEntry entry) {
+                    String name = entry.getFilename();
+                    if (name.equals(".") || name.equals("..") || !collector.matches(name)) {
+                        return CONTINUE;
+                    }
+                    SftpATTRS attributes = entry.getAttrs();
+                    if (collector.isOrdered()) {
+                        if (attributes.isReg()) {
+                            collector.add(name, attributes.getMTime() * 1000L);
+                        }
+                        return CONTINUE;
+                    }
+                    collector.add(name, 0);
+                    // the rest of the listing is not requested from the server
+                    return collector.isFull() ? BREAK : CONTINUE;
+                }
+            });
+            broken = false;
+            return true;
+        } catch (SftpException e) {
+            broken = false;
+            throw SftpSessionPool.toIOException("Unable to list " + folder.getName().getFriendlyURI(), e);
+        } finally {
+            SftpSessionPool.release(sftp, broken);
+        }
+    }
+
+    private static Comparator<Candidate> getComparator(String order) throws IOException {
+        if (order == null || order.trim().equals("")) {
+            return null;
+        }
+        if (FileConstants.NAME.equals(order.trim())) {
+            return new Comparator<Candidate>() {
+                public int compare(Candidate a, Candidate b) {
+                    return a.name.compareTo(b.name);
+                }
+            };
+        }
+        if (FileConstants.OLDEST.equals(order.trim())) {
+            return new Comparator<Candidate>() {
+                public int compare(Candidate a, Candidate b) {
+                    if (a.lastModified != b.lastModified) {
+                        return a.lastModified < b.lastModified ? -1 : 1;
+                    }
+                    return a.name.compareTo(b.name);
+                }
+            };
+        }
+        throw new IOException("Invalid file order : " + order + ", expected " + FileConstants.NAME + " or "
+                + FileConstants.OLDEST);
+    }
+
+    private static class Candidate {
+        private final String name;
+        private final long lastModified;
+
+        Candidate(String name, long lastModified) {
+            this.name = name;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Keeps the first entries in listing order, or the best ones in a heap of the given size whose head is
+     * the worst kept entry
+     */
+    private static class Collector {
+        private final Pattern pattern;
+        private final Comparator<Candidate> comparator;
+        private final int count;
+        private final List<String> names = new ArrayList<String>();
+        private final PriorityQueue<Candidate> heap;
+
+        Collector(Pattern pattern, Comparator<Candidate> comparator, int count) {
+            this.pattern = pattern;
+            this.comparator = comparator;
+            this.count = count;
+            this.heap = comparator == null ? null
+                    : new PriorityQueue<Candidate>(count + 1, Collections.reverseOrder(comparator));
+        }
+
+        boolean isOrdered() {
+            return comparator != null;
+        }
+
+        boolean isFull() {
+            return comparator == null && names.size() >= count;
+        }
+
+        boolean matches(String name) {
+            return pattern == null || pattern.matcher(name).matches();
+        }
+
+        void add(String name, long lastModified) {
+            if (comparator == null) {
+                names.add(name);
+                return;
+            }
+            heap.add(new Candidate(name, lastModified));
+            if (heap.size() > count) {
+                heap.poll();
+            }
+        }
+
+        List<String> getNames() {
+            if (comparator == null) {
+                return names;
+            }
+            List<Candidate> candidates = new ArrayList<Candidate>(heap);
+            Collections.sort(candidates, comparator);
+            List<String> sorted = new ArrayList<String>();
+            for (Candidate candidate : candidates) {
+                sorted.add(candidate.name);
+            }
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Compact persisted view of the files under a folder, relative path to "size,mtime", used to find the
+ * entries created, modified or deleted since the previous look at the folder.
+ */
+public class FolderSnapshot {
+    public static final String CREATED = "created";
+    public static final String MODIFIED = "modified";
+    public static final String DELETED = "deleted";
+
+    private final String key;
+    private final TreeMap<String, String> entries = new TreeMap<String, String>();
+
+    private FolderSnapshot(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Load the persisted snapshot
+     *
+     * @param key Checkpoint key of the snapshot
+     * @return return the snapshot, empty if there is none yet
+     * @throws IOException
+     */
+    public static FolderSnapshot load(String key) throws IOException {
+        FolderSnapshot snapshot = new FolderSnapshot(key);
+        Properties properties = FileCheckpointStore.load(key);
+        for (String name : properties.stringPropertyNames()) {
+            snapshot.entries.put(name, properties.getProperty(name));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Persist the snapshot
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        FileCheckpointStore.save(key, properties);
+    }
+
+    /**
+     * @return return the state of an entry as stored in the snapshot
+     */
+    public static String getState(long size, long lastModified) {
+        return size + "," + lastModified;
+    }
+
+    /**
+     * Replace the entries under a path with its current entries, and record the differences
+     *
+     * @param path    Relative path of a file or folder, "" for the whole snapshot
+     * @param current Current entries under the path, relative path to state
+     * @param changes Changes found, as {type, relative path}
+     */
+    public void update(String path, Map<String, String> current, List<String[]> changes) {
+        SortedMap<String, String> previous;
+        if (path.equals("")) {
+            previous = entries;
+        } else {
+            previous = new TreeMap<String, String>(entries.subMap(path + "/", path + "/\uffff"));
+            if (entries.containsKey(path)) {
+                previous.put(path, entries.get(path));
+            }
+        }
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            String state = previous.get(entry.getKey());
+            if (state == null) {
+                changes.add(new String[]{CREATED, entry.getKey()});
+            } else if (!state.equals(entry.getValue())) {
+                changes.add(new String[]{MODIFIED, entry.getKey()});
+            }
+        }
+        for (String name : previous.keySet()) {
+            if (!current.containsKey(name)) {
+                changes.add(new String[]{DELETED, name});
+            }
+        }
+        if (path.equals("")) {
+            entries.clear();
+        } else {
+            entries.subMap(path + "/", path + "/\uffff").clear();
+            entries.remove(path);
+        }
+        entries.putAll(current);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.vfs2.Capability;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.RandomAccessContent;
+import org.apache.commons.vfs2.provider.local.LocalFileName;
+import org.apache.commons.vfs2.util.RandomAccessMode;
+
+/**
+ * Helpers for reading files, with a fast path for files on the local file system.
+ */
+public final class LocalFileUtil {
+    private static final long DEFAULT_MMAP_THRESHOLD = 64L * 1024 * 1024;
+
+    private LocalFileUtil() {
+    }
+
+    /**
+     * Get the java.io.File behind a local FileObject
+     *
+     * @param fileObject The file object
+     * @return return the local file, or null if the file object is not on the local file system
+     * @throws FileSystemException
+     */
+    public static File getLocalFile(FileObject fileObject) throws FileSystemException {
+        FileName name = fileObject.getName();
+        if (!(name instanceof LocalFileName)) {
+            return null;
+        }
+        // same as the local provider resolves its files
+        return new File(((LocalFileName) name).getRootFile() + name.getPathDecoded());
+    }
+
+    /**
+     * @return return the size from which local files are read through a memory mapping
+     */
+    public static long getMmapThreshold() {
+        return FileConnectorConfig.getLongProperty("mmap.threshold", DEFAULT_MMAP_THRESHOLD);
+    }
+
+    /**
+     * Open the whole file for reading
+     *
+     * @param fileObject The file to read
+     * @return return the input stream
+     * @throws IOException
+     */
+    public static InputStream openInputStream(FileObject fileObject) throws IOException {
+        File file = getLocalFile(fileObject);
+        if (file != null && file.length() >= getMmapThreshold()) {
+            return new MappedFile(file).getInputStream(0, -1);
+        }
+        return fileObject.getContent().getInputStream();
+    }
+
+    /**
+     * Open a byte range of the file for reading
+     *
+     * @param fileObject The file to read
+     * @param offset     Start of the range
+     * @param length     Length of the range, or -1 for the rest of the file
+     * @return return the input stream
+     * @throws IOException
+     */
+    public static InputStream openInputStream(FileObject fileObject, long offset, long length) throws IOException {
+        File file = getLocalFile(fileObject);
+        InputStream in;
+        if (file != null) {
+            if (file.length() >= getMmapThreshold()) {
+                return new MappedFile(file).getInputStream(offset, length);
+            }
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            randomAccessFile.seek(offset);
+            in = Channels.newInputStream(randomAccessFile.getChannel());
+        } else if (fileObject.getFileSystem().hasCapability(Capability.RANDOM_ACCESS_READ)) {
+            final RandomAccessContent content = fileObject.getContent().getRandomAccessContent(
+                    RandomAccessMode.READ);
+            content.seek(offset);
+            in = new FilterInputStream(content.getInputStream()) {
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        content.close();
+                    }
+                }
+            };
+        } else {
+            in = fileObject.getContent().getInputStream();
+            long remaining = offset;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    break;
+                }
+                remaining -= skipped;
+            }
+        }
+        return length < 0 ? in : new BoundedInputStream(in, length);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Tracks the changes under a local folder with a WatchService. The folder is scanned once when the watcher
+ * is created, to find the changes made since the persisted snapshot; after that only the paths reported
+ * by the watch events are looked at, so the cost of a poll follows the rate of change, not the folder size.
+ * Watchers are kept per checkpoint key for the life time of the server.
+ */
+public class LocalFolderWatcher {
+    private static final Log log = LogFactory.getLog(LocalFolderWatcher.class);
+    private static final ConcurrentMap<String, LocalFolderWatcher> watchers =
+            new ConcurrentHashMap<String, LocalFolderWatcher>();
+
+    private final String key;
+    private final Path root;
+    private final boolean recursive;
+    private final String filePattern;
+    private final FilePattenMatcher matcher;
+    private final Map<WatchKey, Path> watchKeys = new HashMap<WatchKey, Path>();
+    private WatchService watchService;
+    private FolderSnapshot snapshot;
+
+    private LocalFolderWatcher(String key, Path root, boolean recursive, String filePattern) {
+        this.key = key;
+        this.root = root;
+        this.recursive = recursive;
+        this.filePattern = filePattern == null ? "" : filePattern.trim();
+        this.matcher = this.filePattern.equals("") ? null : new FilePattenMatcher(this.filePattern);
+    }
+
+    /**
+     * Get the watcher of a checkpoint key, creating it on first use
+     *
+     * @param key         Checkpoint key of the folder
+     * @param root        Folder to watch
+     * @param recursive   Watch the sub folders too
+     * @param filePattern Pattern of the file names to report, null for all files
+     * @return return the watcher
+     */
+    public static LocalFolderWatcher getWatcher(String key, Path root, boolean recursive, String filePattern) {
+        LocalFolderWatcher newWatcher = new LocalFolderWatcher(key, root, recursive, filePattern);
+        while (true) {
+            LocalFolderWatcher watcher = watchers.putIfAbsent(key, newWatcher);
+            if (watcher == null) {
+                return newWatcher;
+            }
+            if (watcher.root.equals(root) && watcher.recursive == recursive
+                    && watcher.filePattern.equals(newWatcher.filePattern)) {
+                return watcher;
+            }
+            // the key is reused for another folder or filter, start over from the persisted snapshot
+            if (watchers.replace(key, watcher, newWatcher)) {
+                watcher.close();
+                return newWatcher;
+            }
+        }
+    }
+
+    /**
+     * Close the watchers of every folder once the operations are undeployed, the snapshots stay persisted
+     */
+    public static void closeAll() {
+        for (LocalFolderWatcher watcher : watchers.values()) {
+            watcher.close();
+        }
+        watchers.clear();
+    }
+
+    /**
+     * Get the changes since the previous poll, and persist the updated snapshot
+     *
+     * @return return the changes, as {type, relative path}
+     * @throws IOException
+     */
+    public synchronized List<String[]> poll() throws IOException {
+        List<String[]> changes = new ArrayList<String[]>();
+        if (watchService == null) {
+            snapshot = FolderSnapshot.load(key);
+            watchService = root.getFileSystem().newWatchService();
+            try {
+                refresh("", changes);
+            } catch (IOException e) {
+                // scan again on the next poll
+                close();
+                throw e;
+            }
+        } else {
+            Set<String> paths = new LinkedHashSet<String>();
+            boolean overflow = false;
+            WatchKey watchKey;
+            while ((watchKey = watchService.poll()) != null) {
+                Path folder = watchKeys.get(watchKey);
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null) {
+                        overflow = true;
+                    } else {
+                        paths.add(getRelativePath(folder.resolve((Path) event.context())));
+                    }
+                }
+                if (!watchKey.reset()) {
+                    watchKeys.remove(watchKey);
+                }
+            }
+            if (overflow) {
+                // events were lost, fall back to a full scan
+                paths.clear();
+                paths.add("");
+            }
+            for (String path : paths) {
+                refresh(path, changes);
+            }
+        }
+        if (!changes.isEmpty()) {
+            snapshot.save();
+        }
+        return changes;
+    }
+
+    /**
+     * Compare the current entries under a path with the snapshot
+     *
+     * @param path    Relative path of a file or folder, "" for the whole folder
+     * @param changes Changes found
+     * @throws IOException
+     */
+    private void refresh(String path, List<String[]> changes) throws IOException {
+        final Map<String, String> current = new TreeMap<String, String>();
+        Path target = path.equals("") ? root : root.resolve(path);
+        if (Files.isDirectory(target)) {
+            if (recursive || target.equals(root)) {
+                Files.walkFileTree(target, EnumSet.noneOf(FileVisitOption.class), recursive ? Integer.MAX_VALUE : 1,
+                        new SimpleFileVisitor<Path>() {
+                            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                                    throws IOException {
+                                register(dir);
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                                if (attrs.isRegularFile()) {
+                                    addEntry(file, attrs, current);
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                                // deleted while walking, the delete event reports it
+                                return FileVisitResult.CONTINUE;
+                            }
+                        });
+            }
+        } else if (Files.isRegularFile(target) && (recursive || root.equals(target.getParent()))) {
+            try {
+                addEntry(target, Files.readAttributes(target, BasicFileAttributes.class), current);
+            } catch (NoSuchFileException e) {
+                // deleted since the event
+            }
+        }
+        snapshot.update(path, current, changes);
+    }
+
+    private void addEntry(Path file, BasicFileAttributes attrs, Map<String, String> entries) {
+        if (matcher == null || matcher.validate(file.getFileName().toString())) {
+            entries.put(getRelativePath(file), FolderSnapshot.getState(attrs.size(),
+                    attrs.lastModifiedTime().toMillis()));
+        }
+    }
+
+    private void register(Path folder) throws IOException {
+        watchKeys.put(folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), folder);
+    }
+
+    private String getRelativePath(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Stop watching the folder
+     */
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Unable to close the watch service of " + root, e);
+            }
+            watchService = null;
+            watchKeys.clear();
+        }
+    }
+}
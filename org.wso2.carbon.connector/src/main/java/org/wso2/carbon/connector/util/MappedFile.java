@@ -0,0 +1,204 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only, memory mapped view of a local file. The file is mapped in fixed size windows, so files larger
+ * than 2 GB can be read and only the window in use is held in the address space. Reads are served from the
+ * page cache, without going through a read buffer on the Java heap.
+ * Instances are not thread safe.
+ */
+public class MappedFile {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+
+    public MappedFile(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+    }
+
+    /**
+     * @return return the size of the file
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Map the window holding the given position
+     *
+     * @param position Position in the file
+     * @return return the window, positioned at the given position
+     * @throws IOException
+     */
+    private MappedByteBuffer windowAt(long position) throws IOException {
+        if (window == null || position < windowStart || position >= windowEnd) {
+            windowStart = position - position % WINDOW_SIZE;
+            windowEnd = Math.min(windowStart + WINDOW_SIZE, size);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+        }
+        window.position((int) (position - windowStart));
+        return window;
+    }
+
+    /**
+     * @param position Position in the file
+     * @return return the byte at the position (0-255), or -1 at the end of the file
+     * @throws IOException
+     */
+    public int get(long position) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        return windowAt(position).get() & 0xff;
+    }
+
+    /**
+     * Scan for a byte, e.g. the next line feed
+     *
+     * @param value Byte to find
+     * @param from  Position to start the scan from
+     * @return return the position of the byte, or -1 if it is not found
+     * @throws IOException
+     */
+    public long indexOf(byte value, long from) throws IOException {
+        long position = from;
+        while (position < size) {
+            MappedByteBuffer buffer = windowAt(position);
+            while (buffer.hasRemaining()) {
+                if (buffer.get() == value) {
+                    return windowStart + buffer.position() - 1;
+                }
+            }
+            position = windowEnd;
+        }
+        return -1;
+    }
+
+    /**
+     * Copy bytes starting at a position
+     *
+     * @param position Position in the file
+     * @param bytes    Destination buffer
+     * @param offset   Offset in the destination buffer
+     * @param length   Maximum number of bytes to copy
+     * @return return the number of bytes copied, or -1 at the end of the file
+     * @throws IOException
+     */
+    public int read(long position, byte[] bytes, int offset, int length) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        MappedByteBuffer buffer = windowAt(position);
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    /**
+     * Get the mapped bytes from a position up to the end of its window, without copying them
+     *
+     * @param position Position in the file
+     * @return return a read only buffer over the bytes, empty at the end of the file
+     * @throws IOException
+     */
+    public ByteBuffer getBuffer(long position) throws IOException {
+        if (position >= size) {
+            return ByteBuffer.allocate(0);
+        }
+        return windowAt(position).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Stream a byte range of the file. Closing the stream closes this mapped file.
+     *
+     * @param offset Start of the range
+     * @param length Length of the range, or -1 for the rest of the file
+     * @return return the input stream
+     */
+    public InputStream getInputStream(final long offset, long length) {
+        final long end = length < 0 ? size : Math.min(size, offset + length);
+        return new InputStream() {
+            private long position = offset;
+            private long mark = offset;
+
+            public int read() throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                return get(position++);
+            }
+
+            public int read(byte[] bytes, int off, int len) throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                int count = MappedFile.this.read(position, bytes, off, (int) Math.min(len, end - position));
+                position += count;
+                return count;
+            }
+
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, end - position));
+                position += skipped;
+                return skipped;
+            }
+
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, end - position);
+            }
+
+            public boolean markSupported() {
+                return true;
+            }
+
+            public synchronized void mark(int readLimit) {
+                mark = position;
+            }
+
+            public synchronized void reset() {
+                position = mark;
+            }
+
+            public void close() throws IOException {
+                MappedFile.this.close();
+            }
+        };
+    }
+
+    public void close() throws IOException {
+        // the mapping stays valid until it is garbage collected, closing the file only releases the descriptor
+        window = null;
+        file.close();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.provider.local.LocalFileName;
+
+/**
+ * java.nio.file implementations of the operations on local files, used instead of the commons-vfs2 file
+ * objects when the location is a file:// URI (or a plain local path). The attributes come with the
+ * listings and a single stat per entry, and copies and moves are done by the file system where it can.
+ */
+public final class NioFileUtil {
+    private static final String FILE_SCHEME = "file";
+
+    private NioFileUtil() {
+    }
+
+    /**
+     * Get the local path of a location, without touching the file system
+     *
+     * @param uri Location of the file
+     * @return return the path, or null if the location is not on the local file system
+     */
+    public static Path toPath(String uri) {
+        if (uri == null || uri.trim().equals("")
+                || !FileConnectorConfig.getBooleanProperty("nio.local", true)) {
+            return null;
+        }
+        try {
+            FileName name = FileConnectorVFS.getManager().resolveURI(uri.trim());
+            if (!(name instanceof LocalFileName) || !FILE_SCHEME.equals(name.getScheme())) {
+                return null;
+            }
+            // same as the local provider resolves its files
+            return Paths.get(((LocalFileName) name).getRootFile() + name.getPathDecoded());
+        } catch (FileSystemException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param path The path
+     * @return return the attributes of the path, or null if it does not exist
+     * @throws IOException
+     */
+    public static BasicFileAttributes getAttributes(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * List the entries of a folder matching the patterns
+     *
+     * @param folder      The folder
+     * @param filePattern Pattern of the file names, or null to skip the files
+     * @param dirPattern  Pattern of the folder names, or null to skip the folders
+     * @return return the matching names in the order of the listing, mapped to true for the folders
+     * @throws IOException
+     */
+    public static Map<String, Boolean> search(Path folder, String filePattern, String dirPattern)
+            throws IOException {
+        // a symbolic link to the folder would be visited as a file, the links inside it are not followed
+        final Path root = folder.toRealPath();
+        final FilePattenMatcher fileMatcher = filePattern == null ? null : new FilePattenMatcher(filePattern);
+        final FilePattenMatcher dirMatcher = dirPattern == null ? null : new FilePattenMatcher(dirPattern);
+        final Map<String, Boolean> entries = new LinkedHashMap<String, Boolean>();
+        // at the maximum depth the folders are given to visitFile, with the attributes of the listing
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (file.equals(root)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = file.getFileName().toString();
+                if (attributes.isRegularFile() && fileMatcher != null && fileMatcher.validate(name.toLowerCase())) {
+                    entries.put(name, Boolean.FALSE);
+                } else if (attributes.isDirectory() && dirMatcher != null
+                        && dirMatcher.validate(name.toLowerCase())) {
+                    entries.put(name, Boolean.TRUE);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Delete a file, or a folder with its contents
+     *
+     * @param path The file or folder
+     * @throws IOException
+     */
+    public static void delete(Path path) throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Copy a file, or a folder with its contents, replacing the existing files
+     *
+     * @param source      The file or folder
+     * @param destination The copy
+     * @throws IOException
+     */
+    public static void copy(Path source, final Path destination) throws IOException {
+        if (!Files.isDirectory(source)) {
+            if (destination.getParent() != null) {
+                Files.createDirectories(destination.getParent());
+            }
+            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        // a symbolic link to the folder would be visited as a file, the links inside it are copied as they are
+        final Path root = source.toRealPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                Files.createDirectories(destination.resolve(root.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.copy(file, destination.resolve(root.relativize(file).toString()),
+                        StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Move a file or a folder, as a rename when both are on the same file system
+     *
+     * @param source      The file or folder
+     * @param destination The new location, an existing file or empty folder is replaced
+     * @return return false if the move has to be done by copying, i.e. a folder moved to another file system
+     * or onto a folder that is not empty
+     * @throws IOException
+     */
+    public static boolean move(Path source, Path destination) throws IOException {
+        try {
+            Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (DirectoryNotEmptyException e) {
+            return false;
+        }
+    }
+}
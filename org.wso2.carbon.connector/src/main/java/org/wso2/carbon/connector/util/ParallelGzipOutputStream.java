@@ -0,0 +1,151 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip output stream that compresses fixed size blocks concurrently on the {@link FileWorkerPool}.
+ * Every block is written as a separate gzip member, and the members are written out in order.
+ * Concatenated members form a valid gzip stream (RFC 1952), readable by gunzip and by
+ * GzipCompressorInputStream with decompressConcatenated enabled.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final OutputStream out;
+    private final int level;
+    private final int maxPending;
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int count;
+    private boolean written;
+    private boolean closed;
+
+    /**
+     * @param out   Underlying output stream
+     * @param level Deflater level (0-9), or -1 for the default level
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level) {
+        this.out = out;
+        this.level = level < 0 ? Deflater.DEFAULT_COMPRESSION : Math.min(level, Deflater.BEST_COMPRESSION);
+        // keep every worker busy while the next block is being filled, without buffering the whole input
+        this.maxPending = FileWorkerPool.getParallelism() * 2;
+    }
+
+    public void write(int b) throws IOException {
+        block[count++] = (byte) b;
+        if (count == BLOCK_SIZE) {
+            submitBlock();
+        }
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int size = Math.min(length, BLOCK_SIZE - count);
+            System.arraycopy(bytes, offset, block, count, size);
+            count += size;
+            offset += size;
+            length -= size;
+            if (count == BLOCK_SIZE) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Flushing ends the current gzip member, so it compresses less well than a single stream.
+     */
+    public void flush() throws IOException {
+        if (count > 0) {
+            submitBlock();
+        }
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // an empty input still needs one (empty) member to be a valid gzip file
+            if (count > 0 || !written) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] data = block;
+        final int length = count;
+        pending.add(FileWorkerPool.getExecutor().submit(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                return compress(data, length);
+            }
+        }));
+        written = true;
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+        while (pending.size() >= maxPending) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        Future<byte[]> future = pending.removeFirst();
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing a block.");
+        } catch (ExecutionException e) {
+            IOException exception = new IOException("Unable to compress a block.");
+            exception.initCause(e.getCause());
+            throw exception;
+        }
+    }
+
+    private byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 2 + 64);
+        GZIPOutputStream gzip = new GZIPOutputStream(bos, FileConstants.BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+        gzip.write(data, 0, length);
+        gzip.close();
+        return bos.toByteArray();
+    }
+}
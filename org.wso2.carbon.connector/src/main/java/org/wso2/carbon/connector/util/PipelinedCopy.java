@@ -0,0 +1,160 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies a stream with the reads and the writes overlapped: a worker thread reads ahead into a bounded
+ * ring of buffers while the calling thread writes the filled ones. The reader blocks when every buffer is
+ * waiting to be written, so a slow destination holds back the source instead of growing the memory.
+ * When the copy fails, the reader is stopped before the copy returns, so that the caller can close the source.
+ */
+public final class PipelinedCopy {
+    private static final int DEFAULT_BUFFERS = 4;
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private PipelinedCopy() {
+    }
+
+    /**
+     * Copy the input stream to the output stream. The streams are not closed.
+     *
+     * @param in  The source stream
+     * @param out The destination stream
+     * @return return the number of bytes copied
+     * @throws IOException
+     */
+    public static long copy(final InputStream in, OutputStream out) throws IOException {
+        int buffers = Math.max(2, FileConnectorConfig.getIntProperty("pipeline.buffers", DEFAULT_BUFFERS));
+        int bufferSize = FileConnectorConfig.getIntProperty("pipeline.bufferSize", DEFAULT_BUFFER_SIZE);
+        final BlockingQueue<Buffer> free = new ArrayBlockingQueue<Buffer>(buffers);
+        final BlockingQueue<Buffer> filled = new ArrayBlockingQueue<Buffer>(buffers + 1);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new Buffer(bufferSize));
+        }
+        // taken by the reader when it starts, or by the writer to keep it from starting
+        final AtomicBoolean started = new AtomicBoolean();
+        final CountDownLatch finished = new CountDownLatch(1);
+        Future<Void> reader = FileWorkerPool.getExecutor().submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    while (true) {
+                        Buffer buffer = free.take();
+                        buffer.length = fill(in, buffer.bytes);
+                        if (buffer.length == 0) {
+                            filled.put(Buffer.END);
+                            return null;
+                        }
+                        filled.put(buffer);
+                    }
+                } catch (Exception e) {
+                    // the writer needs the end marker to stop waiting; the cause is given by the future
+                    filled.offer(Buffer.END);
+                    throw e;
+                } finally {
+                    finished.countDown();
+                }
+            }
+        });
+        long count = 0;
+        boolean completed = false;
+        try {
+            while (true) {
+                Buffer buffer = filled.take();
+                if (buffer == Buffer.END) {
+                    reader.get();
+                    completed = true;
+                    return count;
+                }
+                out.write(buffer.bytes, 0, buffer.length);
+                count += buffer.length;
+                free.put(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            IOException exception = new IOException("Unable to read the source.");
+            exception.initCause(e.getCause());
+            throw exception;
+        } finally {
+            if (!completed) {
+                stop(reader, started, finished);
+            }
+        }
+    }
+
+    /**
+     * Cancel the reader and wait until it no longer reads the source. Future.get returns at once on a
+     * cancelled task, so the end of the reader is awaited on its own latch.
+     */
+    private static void stop(Future<Void> reader, AtomicBoolean started, CountDownLatch finished) {
+        reader.cancel(true);
+        if (started.compareAndSet(false, true)) {
+            // the reader never started, and will not
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int fill(InputStream in, byte[] bytes) throws IOException {
+        int count = 0;
+        int read;
+        while (count < bytes.length && (read = in.read(bytes, count, bytes.length - count)) != -1) {
+            count += read;
+        }
+        return count;
+    }
+
+    private static class Buffer {
+        private static final Buffer END = new Buffer(0);
+        private final byte[] bytes;
+        private int length;
+
+        Buffer(int size) {
+            bytes = new byte[size];
+        }
+    }
+}
@@ -23,7 +23,10 @@ import javax.mail.internet.ContentType;
 import javax.mail.internet.ParseException;
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
 import org.apache.axiom.om.util.AXIOMUtil;
 import org.apache.axiom.soap.SOAPBody;
 import org.apache.axis2.Constants;
@@ -33,6 +36,7 @@ import org.apache.axis2.format.DataSourceMessageBuilder;
 import org.apache.axis2.format.ManagedDataSource;
 import org.apache.axis2.format.ManagedDataSourceFactory;
 import org.apache.axis2.transport.TransportUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.AutoCloseInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,6 +49,27 @@ import org.codehaus.jettison.json.JSONException;
 
 public class ResultPayloadCreate {
     private static final Log log = LogFactory.getLog(ResultPayloadCreate.class);
+    private static final OMFactory factory = OMAbstractFactory.getOMFactory();
+    private static final OMNamespace namespace = factory.createOMNamespace(FileConstants.FILECON,
+            FileConstants.NAMESPACE);
+
+    /**
+     * Get the shared OM factory used to build the result payloads
+     *
+     * @return return the OMFactory
+     */
+    public static OMFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Get the file connector namespace used in the result payloads
+     *
+     * @return return the OMNamespace
+     */
+    public static OMNamespace getNamespace() {
+        return namespace;
+    }
 
     /**
      * Prepare pay load
@@ -57,6 +82,22 @@ public class ResultPayloadCreate {
         soapBody.addChild(element);
     }
 
+    /**
+     * Create the result element directly, without serializing and re-parsing a string
+     * e.g. createResultElement("result", "success", "true") gives &lt;result&gt;&lt;success&gt;true&lt;/success&gt;&lt;/result&gt;
+     *
+     * @param rootName  Name of the root element
+     * @param childName Name of the status element
+     * @param value     Text of the status element
+     * @return return resultElement
+     */
+    public OMElement createResultElement(String rootName, String childName, String value) {
+        OMElement resultElement = factory.createOMElement(rootName, null);
+        OMElement childElement = factory.createOMElement(childName, null, resultElement);
+        childElement.setText(value);
+        return resultElement;
+    }
+
     /**
      * Create a OMElement
      *
@@ -87,6 +128,26 @@ public class ResultPayloadCreate {
      */
     public static boolean buildFile(FileObject file, MessageContext msgCtx, String contentType, String streaming)
             throws SynapseException {
+        return buildFile(file, null, msgCtx, contentType, streaming);
+    }
+
+    /**
+     * Build the payload from part of a file, e.g. the bytes appended since the last read
+     *
+     * @param file Read file, used to detect the content type
+     * @param content Content to build the payload from, closed once the payload is built
+     * @param msgCtx Message Context
+     * @param contentType content type
+     * @return return the status
+     * @throws SynapseException
+     */
+    public static boolean buildFile(FileObject file, InputStream content, MessageContext msgCtx,
+                                    String contentType) throws SynapseException {
+        return buildFile(file, content, msgCtx, contentType, "false");
+    }
+
+    private static boolean buildFile(FileObject file, InputStream content, MessageContext msgCtx,
+                                     String contentType, String streaming) throws SynapseException {
         ManagedDataSource dataSource = null;
         try {
             if (contentType == null || contentType.trim().equals("")) {
@@ -133,11 +194,14 @@ public class ResultPayloadCreate {
 
             // set the message payload to the message context
             InputStream in;
-            if (builder instanceof DataSourceMessageBuilder && "true".equals(streaming)) {
+            if (content != null) {
+                in = new AutoCloseInputStream(content);
+                dataSource = null;
+            } else if (builder instanceof DataSourceMessageBuilder && "true".equals(streaming)) {
                 in = null;
                 dataSource = ManagedDataSourceFactory.create(new FileObjectDataSource(file, contentType));
             } else {
-                in = new AutoCloseInputStream(file.getContent().getInputStream());
+                in = new AutoCloseInputStream(LocalFileUtil.openInputStream(file));
                 dataSource = null;
             }
 
@@ -162,6 +226,7 @@ public class ResultPayloadCreate {
             if (dataSource != null) {
                 dataSource.destroy();
             }
+            IOUtils.closeQuietly(content);
         }
         return true;
     }
@@ -0,0 +1,656 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileObject;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * Transfers a large file between an SFTP server and the local file system over several SFTP
+ * connections at once, as many as sftp.segment.count and the free slots of the host in the TransferScheduler
+ * allow. The file is split into byte ranges which are transferred concurrently on the
+ * worker pool and written at their position, a failed range is resumed on a new connection. The result
+ * is written to a temporary file and only moved into place once it is verified : against the given or
+ * published checksum when there is one, and as set by sftp.segment.verify otherwise (size : the size of
+ * the source, checksum : the digest of every segment on both sides, none : not verified).
+ */
+public final class SftpSegmentedTransfer {
+    private static final long DEFAULT_THRESHOLD = 64L * 1024 * 1024;
+    private static final int DEFAULT_SEGMENTS = 4;
+    private static final int DEFAULT_RETRIES = 3;
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    /**
+     * JSch opens the remote file for writing without truncating it, and writes from the given offset,
+     * for any put mode other than OVERWRITE, RESUME and APPEND (the latter two add the current size to the offset)
+     */
+    private static final int POSITIONAL_WRITE = 3;
+    private static final String VERIFY_SIZE = "size";
+    private static final String VERIFY_CHECKSUM = "checksum";
+    private static final String VERIFY_NONE = "none";
+    private static final String[] CHECKSUM_EXTENSIONS = {".md5", ".sha1", ".sha256"};
+    private static Log log = LogFactory.getLog(SftpSegmentedTransfer.class);
+
+    private SftpSegmentedTransfer() {
+    }
+
+    /**
+     * @return return the size from which SFTP files are transferred in segments
+     */
+    public static long getThreshold() {
+        return FileConnectorConfig.getLongProperty("sftp.segment.threshold", DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param segments Number of segments given on the operation, or null
+     * @return return the number of segments to use
+     */
+    public static int getSegments(String segments) {
+        if (segments != null && !segments.trim().equals("")) {
+            return Integer.parseInt(segments.trim());
+        }
+        return FileConnectorConfig.getIntProperty("sftp.segment.count", DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Whether a copy from the source to the destination can be done in segments
+     *
+     * @param source      The file to copy
+     * @param destination The destination file
+     * @param segments    Number of segments
+     * @return return true if the source is a large SFTP file and the destination is local
+     * @throws IOException
+     */
+    public static boolean isDownload(FileObject source, FileObject destination, int segments) throws IOException {
+        return segments > 1 && "sftp".equals(source.getName().getScheme())
+                && LocalFileUtil.getLocalFile(destination) != null
+                && source.getContent().getSize() >= getThreshold();
+    }
+
+    /**
+     * Download an SFTP file in segments, unless no pooled channel can be opened to the server
+     *
+     * @param source      The SFTP file
+     * @param destination The local destination file
+     * @param segments    Number of segments
+     * @param checksum    Expected hex MD5, SHA-1 or SHA-256 of the file, or null to use a checksum file
+     *                    next to the source (e.g. data.csv.md5) when there is one
+     * @return return false if no channel could be opened, the file is then to be copied on the connection
+     * of its file system
+     * @throws IOException
+     */
+    public static boolean download(FileObject source, FileObject destination, int segments, String checksum)
+            throws IOException {
+        Queue<ChannelSftp> opened = openChannels(source, segments);
+        if (opened.isEmpty()) {
+            return false;
+        }
+        try {
+            // a segment for every channel the host had a slot for
+            download(source, destination, opened.size(), checksum, opened);
+        } finally {
+            releaseAll(opened);
+        }
+        return true;
+    }
+
+    private static void download(FileObject source, FileObject destination, int segments, String checksum,
+                                 final Queue<ChannelSftp> opened) throws IOException {
+        final String path = SftpSessionPool.getPath(source);
+        final long size = source.getContent().getSize();
+        if (checksum == null || checksum.trim().equals("")) {
+            checksum = readChecksumFile(source);
+        }
+        // a checksum verifies the whole file, the configured check is only needed without one
+        String verify = checksum == null ? getVerifyMode(source) : VERIFY_NONE;
+        final boolean readBack = VERIFY_CHECKSUM.equals(verify);
+        File target = LocalFileUtil.getLocalFile(destination);
+        if (target.getParentFile() != null) {
+            target.getParentFile().mkdirs();
+        }
+        File part = new File(target.getPath() + ".part");
+        RandomAccessFile file = new RandomAccessFile(part, "rw");
+        boolean completed = false;
+        try {
+            file.setLength(size);
+            final FileChannel channel = file.getChannel();
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            long segmentSize = Math.max(MIN_SEGMENT_SIZE, (size + segments - 1) / segments);
+            for (long offset = 0; offset < size; offset += segmentSize) {
+                final long start = offset;
+                final long length = Math.min(segmentSize, size - offset);
+                tasks.add(new SegmentTask(source, start, length, opened) {
+                    long transfer(ChannelSftp sftp, long position, long remaining) throws IOException,
+                            SftpException {
+                        InputStream in = sftp.get(path, null, position);
+                        long transferred;
+                        try {
+                            transferred = readInto(in, channel, position, remaining);
+                        } finally {
+                            in.close();
+                        }
+                        if (readBack && transferred == remaining && !Arrays.equals(
+                                digestRange(channel, start, length), digestRemote(sftp, path, start, length))) {
+                            throw new IOException("The segment at " + start + " differs after the download.");
+                        }
+                        return transferred;
+                    }
+                });
+            }
+            runAll(tasks);
+            channel.force(false);
+            file.close();
+            if (!VERIFY_NONE.equals(verify)) {
+                // the segments were read up to the size stat'ed before the transfer
+                source.refresh();
+                long current = source.getContent().getSize();
+                if (current != size) {
+                    throw new IOException("Size mismatch for " + source.getName().getFriendlyURI()
+                            + ", expected " + size + " but the source is now " + current);
+                }
+            }
+            verify(part, checksum, source);
+            moveIntoPlace(part, target);
+            completed = true;
+        } finally {
+            if (!completed) {
+                file.close();
+                part.delete();
+            }
+        }
+    }
+
+    /**
+     * Whether a copy from the source to the destination can be uploaded in segments
+     *
+     * @param source      The file to copy
+     * @param destination The destination file
+     * @param segments    Number of segments
+     * @return return true if the source is a large local file and the destination is on an SFTP server
+     * @throws IOException
+     */
+    public static boolean isUpload(FileObject source, FileObject destination, int segments) throws IOException {
+        File file = LocalFileUtil.getLocalFile(source);
+        return segments > 1 && file != null && "sftp".equals(destination.getName().getScheme())
+                && file.length() >= getThreshold();
+    }
+
+    /**
+     * Upload a local file to an SFTP server in segments. The segments are written into a temporary file
+     * next to the destination, which is renamed into place once every segment is written and verified.
+     * Nothing is uploaded when no pooled channel can be opened to the server.
+     *
+     * @param source      The local file
+     * @param destination The SFTP destination file
+     * @param segments    Number of segments
+     * @param checksum    Expected hex MD5, SHA-1 or SHA-256 of the source, or null
+     * @return return false if no channel could be opened, the file is then to be copied on the connection
+     * of its file system
+     * @throws IOException
+     */
+    public static boolean upload(FileObject source, FileObject destination, int segments, String checksum)
+            throws IOException {
+        Queue<ChannelSftp> opened = openChannels(destination, segments);
+        if (opened.isEmpty()) {
+            return false;
+        }
+        try {
+            // a segment for every channel the host had a slot for
+            upload(source, destination, opened.size(), checksum, opened);
+        } finally {
+            releaseAll(opened);
+        }
+        return true;
+    }
+
+    private static void upload(FileObject source, FileObject destination, int segments, String checksum,
+                               final Queue<ChannelSftp> opened) throws IOException {
+        File file = LocalFileUtil.getLocalFile(source);
+        final String path = SftpSessionPool.getPath(destination);
+        final String part = path + ".part";
+        if (checksum != null && !checksum.trim().equals("")) {
+            verify(file, checksum, source);
+        }
+        destination.getParent().createFolder();
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        boolean completed = false;
+        try {
+            long size = in.length();
+            String verify = getVerifyMode(destination);
+            final boolean readBack = VERIFY_CHECKSUM.equals(verify);
+            ChannelSftp sftp = opened.poll();
+            if (sftp == null) {
+                sftp = SftpSessionPool.open(destination);
+            }
+            boolean broken = true;
+            try {
+                // create the empty temporary file, the segments then write into it without truncating
+                sftp.put(part, ChannelSftp.OVERWRITE).close();
+                broken = false;
+            } catch (SftpException e) {
+                throw SftpSessionPool.toIOException("Unable to create " + part, e);
+            } finally {
+                if (broken) {
+                    SftpSessionPool.release(sftp, true);
+                } else {
+                    // kept for a segment
+                    opened.add(sftp);
+                }
+            }
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            long segmentSize = Math.max(MIN_SEGMENT_SIZE, (size + segments - 1) / segments);
+            for (long offset = 0; offset < size; offset += segmentSize) {
+                final long start = offset;
+                final long length = Math.min(segmentSize, size - offset);
+                tasks.add(new SegmentTask(destination, start, length, opened) {
+                    long transfer(ChannelSftp sftp, long position, long remaining) throws IOException,
+                            SftpException {
+                        OutputStream out = sftp.put(part, null, POSITIONAL_WRITE, position);
+                        try {
+                            writeFrom(in.getChannel(), out, position, remaining);
+                        } finally {
+                            out.close();
+                        }
+                        if (readBack && !Arrays.equals(digestRange(in.getChannel(), start, length),
+                                digestRemote(sftp, part, start, length))) {
+                            throw new IOException("The segment at " + start + " differs after the upload.");
+                        }
+                        return remaining;
+                    }
+                });
+            }
+            runAll(tasks);
+            sftp = SftpSessionPool.open(destination);
+            broken = true;
+            try {
+                long uploaded = sftp.stat(part).getSize();
+                if (uploaded != size && !VERIFY_NONE.equals(verify)) {
+                    throw new IOException("Size mismatch for " + destination.getName().getFriendlyURI()
+                            + ", expected " + size + " but was " + uploaded);
+                }
+                rename(sftp, part, path);
+                broken = false;
+                completed = true;
+            } catch (SftpException e) {
+                throw SftpSessionPool.toIOException("Unable to move " + part + " into place", e);
+            } finally {
+                SftpSessionPool.release(sftp, broken);
+            }
+        } finally {
+            in.close();
+            if (!completed) {
+                removeQuietly(destination, part);
+            }
+        }
+    }
+
+    /**
+     * Release the channels opened ahead and not taken by a segment
+     */
+    private static void releaseAll(Queue<ChannelSftp> opened) {
+        ChannelSftp unused;
+        while ((unused = opened.poll()) != null) {
+            SftpSessionPool.release(unused, false);
+        }
+    }
+
+    /**
+     * Open the channels of the segments ahead, as many as the pool can open up to the given count
+     *
+     * @return return the channels, none if not even one could be opened
+     */
+    private static Queue<ChannelSftp> openChannels(FileObject remote, int count) {
+        Queue<ChannelSftp> opened = new ConcurrentLinkedQueue<ChannelSftp>();
+        while (opened.size() < count) {
+            try {
+                opened.add(SftpSessionPool.open(remote));
+            } catch (IOException e) {
+                if (opened.isEmpty()) {
+                    log.warn("Unable to open pooled SFTP sessions to " + remote.getName().getFriendlyURI()
+                            + ", falling back to a single connection : " + e.getMessage());
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Transferring " + remote.getName().getFriendlyURI() + " in " + opened.size()
+                            + " segments : " + e.getMessage());
+                }
+                break;
+            }
+        }
+        return opened;
+    }
+
+    private static void rename(ChannelSftp sftp, String from, String to) throws SftpException {
+        try {
+            sftp.rename(from, to);
+        } catch (SftpException e) {
+            // SFTP v3 servers do not replace an existing file on rename
+            if (e.id != ChannelSftp.SSH_FX_FAILURE) {
+                throw e;
+            }
+            sftp.rm(to);
+            sftp.rename(from, to);
+        }
+    }
+
+    private static void removeQuietly(FileObject destination, String path) {
+        try {
+            ChannelSftp sftp = SftpSessionPool.open(destination);
+            try {
+                sftp.rm(path);
+            } finally {
+                SftpSessionPool.release(sftp, false);
+            }
+        } catch (Exception e) {
+            log.warn("Unable to remove " + path + " : " + e.getMessage());
+        }
+    }
+
+    private static void writeFrom(FileChannel channel, OutputStream out, long position, long remaining)
+            throws IOException {
+        byte[] bytes = new byte[FileConstants.BUFFER_SIZE * 16];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long done = 0;
+        while (done < remaining) {
+            buffer.clear().limit((int) Math.min(bytes.length, remaining - done));
+            int read = channel.read(buffer, position + done);
+            if (read == -1) {
+                throw new IOException("Unexpected end of the file at " + (position + done));
+            }
+            out.write(bytes, 0, read);
+            done += read;
+        }
+    }
+
+    private static byte[] digestRange(FileChannel channel, long position, long length) throws IOException {
+        MessageDigest digest = newDigest("MD5");
+        ByteBuffer buffer = ByteBuffer.allocate(FileConstants.BUFFER_SIZE * 16);
+        long done = 0;
+        while (done < length) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), length - done));
+            int read = channel.read(buffer, position + done);
+            if (read == -1) {
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            done += read;
+        }
+        return digest.digest();
+    }
+
+    private static byte[] digestRemote(ChannelSftp sftp, String path, long position, long length)
+            throws IOException, SftpException {
+        MessageDigest digest = newDigest("MD5");
+        InputStream in = sftp.get(path, null, position);
+        try {
+            byte[] buffer = new byte[FileConstants.BUFFER_SIZE * 16];
+            long done = 0;
+            int read;
+            while (done < length && (read = in.read(buffer, 0, (int) Math.min(buffer.length, length - done))) != -1) {
+                digest.update(buffer, 0, read);
+                done += read;
+            }
+        } finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Run the segment tasks on the worker pool, failing on the first failed segment
+     */
+    static void runAll(List<Callable<Void>> tasks) throws IOException {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (Callable<Void> task : tasks) {
+            futures.add(FileWorkerPool.getExecutor().submit(task));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transferring the segments.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            IOException exception = new IOException("Unable to transfer a segment.");
+            exception.initCause(e.getCause());
+            throw exception;
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static long readInto(InputStream in, FileChannel channel, long position, long remaining)
+            throws IOException {
+        byte[] bytes = new byte[FileConstants.BUFFER_SIZE * 16];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long done = 0;
+        int read;
+        while (done < remaining && (read = in.read(bytes, 0, (int) Math.min(bytes.length, remaining - done))) != -1) {
+            buffer.clear().limit(read);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + done + buffer.position());
+            }
+            done += read;
+        }
+        return done;
+    }
+
+    /**
+     * Read the expected checksum from a checksum file next to the file, in the md5sum/sha*sum format
+     *
+     * @return return the checksum, or null if there is no checksum file
+     */
+    static String readChecksumFile(FileObject file) throws IOException {
+        for (String extension : CHECKSUM_EXTENSIONS) {
+            FileObject checksumFile = file.getParent().resolveFile(file.getName().getBaseName() + extension);
+            if (checksumFile.exists()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        checksumFile.getContent().getInputStream(), "US-ASCII"));
+                try {
+                    String line = reader.readLine();
+                    return line == null ? null : line.trim().split("\\s+")[0];
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check the digest of the transferred file against the expected checksum
+     */
+    static void verify(File file, String checksum, FileObject source) throws IOException {
+        if (checksum == null) {
+            return;
+        }
+        String actual = toHex(digest(file, getAlgorithm(checksum)));
+        if (!actual.equalsIgnoreCase(checksum.trim())) {
+            throw new IOException("Checksum mismatch for " + source.getName().getFriendlyURI() + ", expected "
+                    + checksum + " but was " + actual);
+        }
+    }
+
+    /**
+     * @param remote The SFTP file
+     * @return return the check of sftp.segment.verify : size, checksum or none, the latter being logged
+     * @throws IOException
+     */
+    private static String getVerifyMode(FileObject remote) throws IOException {
+        String verify = FileConnectorConfig.getProperty("sftp.segment.verify", VERIFY_SIZE).trim();
+        if (VERIFY_NONE.equals(verify)) {
+            log.warn("sftp.segment.verify is none, the segmented transfer of " + remote.getName().getFriendlyURI()
+                    + " is not verified.");
+        } else if (!VERIFY_SIZE.equals(verify) && !VERIFY_CHECKSUM.equals(verify)) {
+            throw new IOException("Invalid sftp.segment.verify : " + verify + ", expected " + VERIFY_SIZE + ", "
+                    + VERIFY_CHECKSUM + " or " + VERIFY_NONE);
+        }
+        return verify;
+    }
+
+    static String getAlgorithm(String checksum) throws IOException {
+        switch (checksum.trim().length()) {
+            case 32:
+                return "MD5";
+            case 40:
+                return "SHA-1";
+            case 64:
+                return "SHA-256";
+            default:
+                throw new IOException("Invalid checksum : " + checksum + ", it should be a hex MD5, SHA-1 or SHA-256.");
+        }
+    }
+
+    private static MessageDigest newDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(algorithm + " is not available.");
+        }
+    }
+
+    static byte[] digest(File file, String algorithm) throws IOException {
+        MessageDigest digest = newDigest(algorithm);
+        InputStream in = Files.newInputStream(file.toPath());
+        try {
+            byte[] buffer = new byte[FileConstants.BUFFER_SIZE * 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void moveIntoPlace(File part, File target) throws IOException {
+        try {
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Transfers one byte range on its own SFTP channel, resuming on a new channel after a failure
+     */
+    abstract static class SegmentTask implements Callable<Void> {
+        private final FileObject remote;
+        private final long start;
+        private final long length;
+        private final Queue<ChannelSftp> opened;
+
+        /**
+         * @param opened Channels already opened to the server, one of them is taken for the first attempt
+         *               when there is one left
+         */
+        SegmentTask(FileObject remote, long start, long length, Queue<ChannelSftp> opened) {
+            this.remote = remote;
+            this.start = start;
+            this.length = length;
+            this.opened = opened;
+        }
+
+        /**
+         * Transfer the bytes from the position on
+         *
+         * @return return the number of bytes transferred, may be less than remaining when the connection ends
+         */
+        abstract long transfer(ChannelSftp sftp, long position, long remaining) throws IOException, SftpException;
+
+        public Void call() throws IOException {
+            int retries = FileConnectorConfig.getIntProperty("sftp.segment.retries", DEFAULT_RETRIES);
+            long done = 0;
+            int attempt = 0;
+            while (done < length) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("The transfer was cancelled.");
+                }
+                ChannelSftp sftp = attempt == 0 && done == 0 ? opened.poll() : null;
+                boolean broken = true;
+                try {
+                    if (sftp == null) {
+                        // no new session is opened while the host has no free slot, the attempt then fails
+                        sftp = SftpSessionPool.open(remote);
+                    }
+                    long transferred = transfer(sftp, start + done, length - done);
+                    done += transferred;
+                    // a short transfer means the connection ended, resume on a new one
+                    broken = done < length;
+                    if (transferred == 0 && broken) {
+                        throw new IOException("Unexpected end of " + remote.getName().getFriendlyURI()
+                                + " at " + (start + done));
+                    }
+                } catch (Exception e) {
+                    if (++attempt > retries) {
+                        throw SftpSessionPool.toIOException("Unable to transfer the segment at " + start
+                                + " of " + remote.getName().getFriendlyURI(), e);
+                    }
+                    log.warn("Retrying the segment at " + start + " of " + remote.getName().getFriendlyURI()
+                            + " from " + (start + done) + " : " + e.getMessage());
+                } finally {
+                    if (sftp != null) {
+                        SftpSessionPool.release(sftp, broken);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.provider.GenericFileName;
+import org.apache.commons.vfs2.provider.sftp.SftpClientFactory;
+import org.apache.commons.vfs2.provider.sftp.SftpFileSystemConfigBuilder;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+/**
+ * Pool of SSH sessions per file system options and user@host:port, used by the segmented SFTP transfers
+ * to open several SFTP channels (each on its own TCP connection) to the same server. The sessions are
+ * created by the SftpClientFactory of commons-vfs2 with the options of the file system of the file, so they
+ * use the same identities, known hosts, host key checking and timeout as the file objects of the operation.
+ * Idle sessions are disconnected after sftp.pool.idleTimeout ms. Every session holds a slot of its host in
+ * the TransferScheduler until it is disconnected; no session is created when the host has no free slot.
+ */
+public final class SftpSessionPool {
+    private static final int DEFAULT_TIMEOUT = 100000;
+    private static final int DEFAULT_MAX_IDLE = 8;
+    private static final long DEFAULT_IDLE_TIMEOUT = 60000;
+    private static Log log = LogFactory.getLog(SftpSessionPool.class);
+    private static final Map<String, LinkedList<IdleSession>> idleSessions =
+            new HashMap<String, LinkedList<IdleSession>>();
+    private static final Map<Session, String> sessionKeys = new IdentityHashMap<Session, String>();
+    /**
+     * Scheduler key of the host of every session, whose slot is freed when the session is disconnected
+     */
+    private static final Map<Session, String> sessionHosts = new IdentityHashMap<Session, String>();
+    private static final Map<FileSystemOptions, Integer> optionIds = new IdentityHashMap<FileSystemOptions, Integer>();
+    /**
+     * Ids are never handed out twice, so that a session released after close is not pooled under the id
+     * of other options
+     */
+    private static int nextOptionId;
+    private static ScheduledExecutorService sweeper;
+
+    private SftpSessionPool() {
+    }
+
+    /**
+     * Open an SFTP channel to the server of the given file, on an idle pooled session when there is one
+     *
+     * @param file A file on the SFTP server
+     * @return return the connected channel, to be given back with release
+     * @throws IOException if no channel can be opened, e.g. when the host has no free slot for a new session
+     */
+    public static ChannelSftp open(FileObject file) throws IOException {
+        GenericFileName name = getName(file.getName());
+        FileSystemOptions opts = file.getFileSystem().getFileSystemOptions();
+        String key = getKey(name, opts);
+        while (true) {
+            Session session = null;
+            synchronized (idleSessions) {
+                LinkedList<IdleSession> sessions = idleSessions.get(key);
+                if (sessions != null && !sessions.isEmpty()) {
+                    session = sessions.removeLast().session;
+                }
+            }
+            boolean pooled = session != null;
+            if (session == null) {
+                session = createSession(name, opts, key);
+            }
+            try {
+                ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+                channel.connect(getTimeout(opts));
+                return channel;
+            } catch (JSchException e) {
+                disconnect(session);
+                if (!pooled) {
+                    throw toIOException("Unable to open an SFTP channel to " + name.getHostName(), e);
+                }
+                // the pooled session went stale, try the next one
+                log.debug("Discarding a stale SFTP session to " + name.getHostName());
+            }
+        }
+    }
+
+    /**
+     * Get the path to give to the channels for a file, as the file system of the file resolves it : relative
+     * to the home folder of the user when sftp.userDirIsRoot is set, absolute otherwise
+     *
+     * @param file A file on the SFTP server
+     * @return return the path of the file
+     * @throws IOException
+     */
+    public static String getPath(FileObject file) throws IOException {
+        FileName name = file.getName();
+        Boolean userDirIsRoot = SftpFileSystemConfigBuilder.getInstance().getUserDirIsRoot(
+                file.getFileSystem().getFileSystemOptions());
+        if (userDirIsRoot == null || !userDirIsRoot.booleanValue()) {
+            return name.getPathDecoded();
+        }
+        String path = name.getPathDecoded().substring(1);
+        return path.equals("") ? "." : path;
+    }
+
+    /**
+     * Open sessions to the server of the given file ahead of the transfers, up to the given number
+     * of idle sessions (and at most sftp.pool.maxIdle)
+     *
+     * @param file  A file on the SFTP server
+     * @param count Number of idle sessions to have
+     * @throws IOException
+     */
+    public static void prefill(FileObject file, int count) throws IOException {
+        GenericFileName name = getName(file.getName());
+        FileSystemOptions opts = file.getFileSystem().getFileSystemOptions();
+        String key = getKey(name, opts);
+        count = Math.min(count, FileConnectorConfig.getIntProperty("sftp.pool.maxIdle", DEFAULT_MAX_IDLE));
+        while (true) {
+            synchronized (idleSessions) {
+                LinkedList<IdleSession> sessions = idleSessions.get(key);
+                if (sessions != null && sessions.size() >= count) {
+                    return;
+                }
+            }
+            Session session = createSession(name, opts, key);
+            if (addIdle(key, session, count)) {
+                continue;
+            }
+            disconnect(session);
+            return;
+        }
+    }
+
+    /**
+     * Give a channel back, keeping its session for reuse
+     *
+     * @param channel The channel returned by open
+     * @param broken  Whether the channel failed, its session is then closed instead of pooled
+     */
+    public static void release(ChannelSftp channel, boolean broken) {
+        Session session;
+        try {
+            session = channel.getSession();
+        } catch (JSchException e) {
+            channel.disconnect();
+            return;
+        }
+        channel.disconnect();
+        if (broken || !session.isConnected()) {
+            disconnect(session);
+            return;
+        }
+        String key;
+        String host;
+        synchronized (idleSessions) {
+            key = sessionKeys.get(session);
+            host = sessionHosts.get(session);
+        }
+        // the slot of an idle session goes to a waiting operation
+        if (key == null || (host != null && TransferScheduler.hasWaiters(host)) || !addIdle(key, session,
+                FileConnectorConfig.getIntProperty("sftp.pool.maxIdle", DEFAULT_MAX_IDLE))) {
+            disconnect(session);
+        }
+    }
+
+    /**
+     * Pool the session, the last pooled session being reused first so that the others can expire
+     *
+     * @return return false if the server already has the given number of idle sessions
+     */
+    private static boolean addIdle(String key, Session session, int max) {
+        synchronized (idleSessions) {
+            LinkedList<IdleSession> sessions = idleSessions.get(key);
+            if (sessions == null) {
+                sessions = new LinkedList<IdleSession>();
+                idleSessions.put(key, sessions);
+            }
+            if (sessions.size() >= max) {
+                return false;
+            }
+            sessions.addLast(new IdleSession(session));
+            if (sweeper == null) {
+                long timeout = FileConnectorConfig.getLongProperty("sftp.pool.idleTimeout", DEFAULT_IDLE_TIMEOUT);
+                sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "file-connector-sftp-pool");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                sweeper.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        closeExpired();
+                    }
+                }, timeout, Math.max(1000, timeout / 2), TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Disconnect the idle sessions to a host, to free their slots
+     *
+     * @param host Scheduler key of the host
+     * @return return the number of sessions disconnected
+     */
+    static int closeIdle(String host) {
+        LinkedList<Session> closed = new LinkedList<Session>();
+        synchronized (idleSessions) {
+            Iterator<LinkedList<IdleSession>> lists = idleSessions.values().iterator();
+            while (lists.hasNext()) {
+                LinkedList<IdleSession> sessions = lists.next();
+                Iterator<IdleSession> iterator = sessions.iterator();
+                while (iterator.hasNext()) {
+                    Session session = iterator.next().session;
+                    if (host.equals(sessionHosts.get(session))) {
+                        iterator.remove();
+                        closed.add(session);
+                    }
+                }
+                if (sessions.isEmpty()) {
+                    lists.remove();
+                }
+            }
+        }
+        for (Session session : closed) {
+            disconnect(session);
+        }
+        return closed.size();
+    }
+
+    /**
+     * Disconnect the sessions idle for longer than sftp.pool.idleTimeout
+     */
+    static void closeExpired() {
+        long timeout = FileConnectorConfig.getLongProperty("sftp.pool.idleTimeout", DEFAULT_IDLE_TIMEOUT);
+        long now = System.currentTimeMillis();
+        LinkedList<Session> expired = new LinkedList<Session>();
+        synchronized (idleSessions) {
+            Iterator<LinkedList<IdleSession>> lists = idleSessions.values().iterator();
+            while (lists.hasNext()) {
+                LinkedList<IdleSession> sessions = lists.next();
+                // the oldest first
+                while (!sessions.isEmpty() && now - sessions.getFirst().since >= timeout) {
+                    expired.add(sessions.removeFirst().session);
+                }
+                if (sessions.isEmpty()) {
+                    lists.remove();
+                }
+            }
+            if (idleSessions.isEmpty() && sweeper != null) {
+                // started again with the next pooled session
+                sweeper.shutdown();
+                sweeper = null;
+            }
+        }
+        for (Session session : expired) {
+            disconnect(session);
+        }
+        if (!expired.isEmpty() && log.isDebugEnabled()) {
+            log.debug("Disconnected " + expired.size() + " idle SFTP sessions.");
+        }
+    }
+
+    /**
+     * Disconnect the idle sessions once the operations are undeployed. The sessions in use are pooled under
+     * ids not handed out anymore when they are released, and expire.
+     */
+    public static void close() {
+        LinkedList<Session> idle = new LinkedList<Session>();
+        synchronized (idleSessions) {
+            for (LinkedList<IdleSession> sessions : idleSessions.values()) {
+                for (IdleSession session : sessions) {
+                    idle.add(session.session);
+                }
+            }
+            idleSessions.clear();
+            optionIds.clear();
+            if (sweeper != null) {
+                sweeper.shutdownNow();
+                sweeper = null;
+            }
+        }
+        for (Session session : idle) {
+            disconnect(session);
+        }
+    }
+
+    private static GenericFileName getName(FileName fileName) throws IOException {
+        if (!(fileName instanceof GenericFileName)) {
+            throw new IOException("Not an SFTP file : " + fileName);
+        }
+        return (GenericFileName) fileName;
+    }
+
+    /**
+     * @return return the pool key of the server, the options being told apart by identity as each transport
+     * profile has its own
+     */
+    private static String getKey(GenericFileName name, FileSystemOptions opts) {
+        Integer id;
+        synchronized (idleSessions) {
+            id = optionIds.get(opts);
+            if (id == null) {
+                id = nextOptionId++;
+                optionIds.put(opts, id);
+            }
+        }
+        return id + "/" + name.getUserName() + "@" + name.getHostName() + ":" + getPort(name);
+    }
+
+    private static int getPort(GenericFileName name) {
+        return name.getPort() > 0 ? name.getPort() : name.getDefaultPort();
+    }
+
+    private static int getTimeout(FileSystemOptions opts) {
+        Integer timeout = SftpFileSystemConfigBuilder.getInstance().getTimeout(opts);
+        return timeout == null ? DEFAULT_TIMEOUT : timeout;
+    }
+
+    private static Session createSession(GenericFileName name, FileSystemOptions opts, String key)
+            throws IOException {
+        String host = TransferScheduler.getKey(name.getHostName(), getPort(name));
+        if (!TransferScheduler.tryAcquireSession(host)) {
+            throw new IOException("No free slot for another session to " + host + " (scheduler.maxConcurrent).");
+        }
+        Session session;
+        try {
+            session = SftpClientFactory.createConnection(name.getHostName(), getPort(name),
+                    toChars(name.getUserName()), toChars(name.getPassword()), opts);
+        } catch (IOException e) {
+            TransferScheduler.releaseSession(host);
+            throw e;
+        } catch (RuntimeException e) {
+            TransferScheduler.releaseSession(host);
+            throw e;
+        }
+        synchronized (idleSessions) {
+            sessionKeys.put(session, key);
+            sessionHosts.put(session, host);
+        }
+        return session;
+    }
+
+    private static char[] toChars(String value) {
+        return value == null ? null : value.toCharArray();
+    }
+
+    private static void disconnect(Session session) {
+        String host;
+        synchronized (idleSessions) {
+            sessionKeys.remove(session);
+            host = sessionHosts.remove(session);
+        }
+        session.disconnect();
+        if (host != null) {
+            TransferScheduler.releaseSession(host);
+        }
+    }
+
+    private static final class IdleSession {
+        private final Session session;
+        private final long since = System.currentTimeMillis();
+
+        IdleSession(Session session) {
+            this.session = session;
+        }
+    }
+
+    static IOException toIOException(String message, Exception cause) {
+        IOException exception = new IOException(message + " : " + cause.getMessage());
+        exception.initCause(cause);
+        return exception;
+    }
+}
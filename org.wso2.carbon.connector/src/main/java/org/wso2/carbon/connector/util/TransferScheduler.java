@@ -0,0 +1,299 @@
+/*
+ *  Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.provider.GenericFileName;
+import org.apache.synapse.MessageContext;
+import org.wso2.carbon.connector.core.util.ConnectorUtils;
+
+/**
+ * Limits the number of sessions open at the same time against each remote host (scheduler.maxConcurrent,
+ * or scheduler.maxConcurrent.&lt;host&gt; for a single host, 0 for no limit). A running operation holds one
+ * slot for its connection, and every pooled SFTP session, in use or idle, holds one more.
+ * An operation over the limit waits for a slot up to scheduler.timeout ms, after the idle pooled sessions
+ * of the host are closed. Freed slots go to the waiting operation with the smallest source file, so that
+ * small files are not stuck behind large ones, except that an operation which has waited longer than
+ * scheduler.agingTime ms goes first. Pooled sessions never wait for a slot, a transfer opens fewer of them
+ * when the host has no free slot.
+ */
+public final class TransferScheduler {
+    private static final long DEFAULT_TIMEOUT = 300000;
+    private static final long DEFAULT_AGING_TIME = 60000;
+    private static final Permit NO_PERMIT = new Permit(new ArrayList<HostSlots>());
+    private static Log log = LogFactory.getLog(TransferScheduler.class);
+    private static final Map<String, HostSlots> hosts = new HashMap<String, HostSlots>();
+
+    private TransferScheduler() {
+    }
+
+    /**
+     * Wait for a slot on every remote host of the operation, i.e. the hosts of its source and destination
+     *
+     * @param messageContext The message context that is processed by a handler in the handle method
+     * @return return the permit, to be released once the operation completes
+     * @throws IOException if a slot is not free within the timeout
+     */
+    public static Permit acquire(MessageContext messageContext) throws IOException {
+        String source = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.FILE_LOCATION);
+        String destination = (String) ConnectorUtils.lookupTemplateParamater(messageContext,
+                FileConstants.NEW_FILE_LOCATION);
+        // sorted, so that two operations never wait on each other's hosts
+        TreeSet<String> keys = new TreeSet<String>();
+        addHost(source, keys);
+        addHost(destination, keys);
+        if (keys.isEmpty()) {
+            return NO_PERMIT;
+        }
+        List<HostSlots> acquired = new ArrayList<HostSlots>();
+        long size = -1;
+        try {
+            for (String key : keys) {
+                HostSlots slots = getSlots(key);
+                if (slots == null) {
+                    continue;
+                }
+                // idle pooled sessions hold slots too, they give way to the operations
+                if (!slots.tryAcquire() && (SftpSessionPool.closeIdle(key) == 0 || !slots.tryAcquire())) {
+                    if (size < 0) {
+                        size = getSize(source);
+                    }
+                    slots.acquire(size);
+                }
+                acquired.add(slots);
+            }
+        } catch (IOException e) {
+            new Permit(acquired).release();
+            throw e;
+        }
+        return new Permit(acquired);
+    }
+
+    private static void addHost(String uri, TreeSet<String> keys) {
+        if (uri == null || uri.trim().equals("")) {
+            return;
+        }
+        try {
+            FileName name = FileConnectorVFS.getManager().resolveURI(uri.trim());
+            if (name instanceof GenericFileName) {
+                GenericFileName hostName = (GenericFileName) name;
+                keys.add(getKey(hostName.getHostName(), hostName.getPort() > 0 ? hostName.getPort()
+                        : hostName.getDefaultPort()));
+            }
+        } catch (FileSystemException e) {
+            // not a valid URI, the operation reports it
+            log.debug("Unable to resolve " + uri + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return return the key of the slots of a host
+     */
+    static String getKey(String host, int port) {
+        return host + ":" + port;
+    }
+
+    /**
+     * Take a slot for a session opened besides the connections of the operations (a pooled SFTP session),
+     * without waiting : the operations waiting for the host go first
+     *
+     * @param key Key of the host
+     * @return return false if the host has no free slot
+     */
+    static boolean tryAcquireSession(String key) {
+        HostSlots slots = getSlots(key);
+        return slots == null || slots.tryAcquire();
+    }
+
+    /**
+     * Free the slot of a closed session
+     *
+     * @param key Key of the host
+     */
+    static void releaseSession(String key) {
+        HostSlots slots = getSlots(key);
+        if (slots != null) {
+            slots.release();
+        }
+    }
+
+    /**
+     * @param key Key of the host
+     * @return return true if operations are waiting for a slot on the host
+     */
+    static boolean hasWaiters(String key) {
+        HostSlots slots = getSlots(key);
+        return slots != null && slots.getWaiting() > 0;
+    }
+
+    private static HostSlots getSlots(String key) {
+        synchronized (hosts) {
+            HostSlots slots = hosts.get(key);
+            if (slots == null) {
+                String host = key.substring(0, key.lastIndexOf(':'));
+                int max = FileConnectorConfig.getIntProperty("scheduler.maxConcurrent." + host,
+                        FileConnectorConfig.getIntProperty("scheduler.maxConcurrent", 0));
+                slots = new HostSlots(key, max);
+                hosts.put(key, slots);
+            }
+            return slots.max > 0 ? slots : null;
+        }
+    }
+
+    /**
+     * @return return the size of the source file, 0 for folders and unknown sources
+     */
+    private static long getSize(String source) {
+        try {
+            FileObject file = FileConnectorVFS.getManager().resolveFile(source.trim(),
+                    FTPSiteUtils.createDefaultOptions());
+            return file.getType() == FileType.FILE ? file.getContent().getSize() : 0;
+        } catch (FileSystemException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Slots held by a running operation
+     */
+    public static final class Permit {
+        private final List<HostSlots> slots;
+
+        private Permit(List<HostSlots> slots) {
+            this.slots = slots;
+        }
+
+        /**
+         * Free the slots for the waiting operations
+         */
+        public void release() {
+            for (HostSlots hostSlots : slots) {
+                hostSlots.release();
+            }
+            slots.clear();
+        }
+    }
+
+    static final class HostSlots {
+        private final String key;
+        private final int max;
+        private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+        private int active;
+
+        HostSlots(String key, int max) {
+            this.key = key;
+            this.max = max;
+        }
+
+        synchronized int getWaiting() {
+            return waiters.size();
+        }
+
+        synchronized boolean tryAcquire() {
+            if (active < max && waiters.isEmpty()) {
+                active++;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void acquire(long size) throws IOException {
+            if (active < max && waiters.isEmpty()) {
+                active++;
+                return;
+            }
+            long timeout = FileConnectorConfig.getLongProperty("scheduler.timeout", DEFAULT_TIMEOUT);
+            Waiter waiter = new Waiter(size);
+            waiters.add(waiter);
+            long deadline = waiter.since + timeout;
+            try {
+                while (!waiter.granted) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new IOException("Timed out after " + timeout + " ms waiting for a free slot on "
+                                + key + " (" + active + " operations running, " + waiters.size() + " waiting).");
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.granted) {
+                    // granted before the interrupt was seen, the slot goes to the next waiter
+                    release();
+                }
+                throw new IOException("Interrupted while waiting for a free slot on " + key);
+            } finally {
+                if (!waiter.granted) {
+                    waiters.remove(waiter);
+                }
+            }
+        }
+
+        synchronized void release() {
+            active--;
+            if (!waiters.isEmpty() && active < max) {
+                Waiter next = next();
+                next.granted = true;
+                active++;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Take the waiter with the smallest size, or the longest waiting one once it waited past the aging time
+         */
+        private Waiter next() {
+            long agingTime = FileConnectorConfig.getLongProperty("scheduler.agingTime", DEFAULT_AGING_TIME);
+            Waiter oldest = waiters.getFirst();
+            Waiter best = oldest;
+            if (System.currentTimeMillis() - oldest.since < agingTime) {
+                for (Waiter waiter : waiters) {
+                    if (waiter.size < best.size) {
+                        best = waiter;
+                    }
+                }
+            }
+            waiters.remove(best);
+            return best;
+        }
+    }
+
+    private static final class Waiter {
+        private final long size;
+        private final long since = System.currentTimeMillis();
+        private boolean granted;
+
+        Waiter(long size) {
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the compare operation, on local files (memory mapped) and on zip entries (block digests)
+ */
+public class FileCompareTest {
+    private File folder;
+    private byte[] data;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        folder = new File(System.getProperty("java.io.tmpdir"), "fileconnector-compare-" + System.nanoTime());
+        Assert.assertTrue(folder.mkdirs());
+        data = new byte[5 * 1024 * 1024];
+        new Random(1).nextBytes(data);
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void testIdenticalLocalFiles() throws IOException {
+        File file1 = write(new File(folder, "identical1.bin"), data);
+        File file2 = write(new File(folder, "identical2.bin"), data);
+        Assert.assertEquals(new FileCompare().compareFiles(file1.getPath(), file2.getPath(), true), -1);
+    }
+
+    @Test
+    public void testDifferentLocalFiles() throws IOException {
+        byte[] changed = data.clone();
+        changed[4500000] ^= 1;
+        File file1 = write(new File(folder, "different1.bin"), data);
+        File file2 = write(new File(folder, "different2.bin"), changed);
+        Assert.assertEquals(new FileCompare().compareFiles(file1.getPath(), file2.getPath(), true), 4500000);
+    }
+
+    @Test
+    public void testPrefixLocalFile() throws IOException {
+        byte[] prefix = new byte[1000];
+        System.arraycopy(data, 0, prefix, 0, prefix.length);
+        File file1 = write(new File(folder, "long.bin"), data);
+        File file2 = write(new File(folder, "prefix.bin"), prefix);
+        Assert.assertEquals(new FileCompare().compareFiles(file1.getPath(), file2.getPath(), true), 1000);
+    }
+
+    @Test
+    public void testIdenticalStreamedFiles() throws IOException {
+        File zip1 = zip("identical1.zip", data);
+        File zip2 = zip("identical2.zip", data);
+        Assert.assertEquals(new FileCompare().compareFiles(entry(zip1), entry(zip2), true), -1);
+    }
+
+    @Test
+    public void testDifferentStreamedFiles() throws IOException {
+        byte[] changed = data.clone();
+        changed[4500000] ^= 1;
+        File zip1 = zip("different1.zip", data);
+        File zip2 = zip("different2.zip", changed);
+        FileCompare compare = new FileCompare();
+        Assert.assertEquals(compare.compareFiles(entry(zip1), entry(zip2), true), 4500000);
+        // without reportOffset, the start of the differing block
+        Assert.assertEquals(compare.compareFiles(entry(zip1), entry(zip2), false), 4 * 1024 * 1024);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testBothReadsFail() throws IOException {
+        File zip1 = corrupt(zip("corrupt1.zip", data));
+        File zip2 = corrupt(zip("corrupt2.zip", data));
+        new FileCompare().compareFiles(entry(zip1), entry(zip2), false);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testOneReadFails() throws IOException {
+        File zip1 = zip("valid.zip", data);
+        File zip2 = corrupt(zip("corrupt.zip", data));
+        new FileCompare().compareFiles(entry(zip1), entry(zip2), false);
+    }
+
+    private File write(File file, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File zip(String name, byte[] content) throws IOException {
+        File file = new File(folder, name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("data.bin"));
+            out.write(content);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Overwrite the compressed data of the entry, so that reading it fails
+     */
+    private File corrupt(File zip) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(zip, "rw");
+        try {
+            file.seek(1000);
+            byte[] garbage = new byte[64 * 1024];
+            Arrays.fill(garbage, (byte) 0xff);
+            file.write(garbage);
+        } finally {
+            file.close();
+        }
+        return zip;
+    }
+
+    private String entry(File zip) {
+        return "zip:" + zip.getAbsolutePath() + "!/data.bin";
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the content search : byte offsets and line numbers of the literal matches, across the reads
+ * of the search buffer, and of the regular expression matches in multibyte text
+ */
+public class FileContentSearchTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private File folder;
+
+    @BeforeClass
+    public void setUp() {
+        folder = new File(System.getProperty("java.io.tmpdir"), "fileconnector-search-" + System.nanoTime());
+        Assert.assertTrue(folder.mkdirs());
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void testLiteralAcrossBuffers() throws IOException {
+        byte[] pattern = "needle".getBytes(UTF8);
+        byte[] data = new byte[BUFFER_SIZE * 3 + 1000];
+        Random random = new Random(1);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (random.nextInt(20) == 0 ? '\n' : 'a' + random.nextInt(26));
+        }
+        // a match cut by the end of every read of the buffer, and a few others
+        int[] positions = new int[]{0, 100, BUFFER_SIZE + pattern.length - 3,
+                2 * BUFFER_SIZE + 2 * pattern.length - 5, 3 * BUFFER_SIZE - 7, data.length - pattern.length};
+        for (int position : positions) {
+            System.arraycopy(pattern, 0, data, position, pattern.length);
+        }
+        List<long[]> expected = find(data, pattern);
+        Assert.assertTrue(expected.size() >= positions.length);
+
+        FileContentSearch.Searcher searcher = new FileContentSearch.LiteralSearcher(pattern, false);
+        assertMatches(searcher.search("data", new ByteArrayInputStream(data)), expected);
+        // short reads fill the buffer in several steps
+        assertMatches(searcher.search("data", new ShortReadStream(data, 1000)), expected);
+
+        List<FileContentSearch.Match> first = new FileContentSearch.LiteralSearcher(pattern, true)
+                .search("data", new ByteArrayInputStream(data));
+        assertMatches(first, expected.subList(0, 1));
+    }
+
+    @Test
+    public void testLiteralNotOverlapping() throws IOException {
+        List<FileContentSearch.Match> matches = new FileContentSearch.LiteralSearcher("aa".getBytes(UTF8), false)
+                .search("data", new ByteArrayInputStream("aaaaa\naa".getBytes(UTF8)));
+        assertMatches(matches, offsets(new long[]{1, 0}, new long[]{1, 2}, new long[]{2, 6}));
+    }
+
+    @Test
+    public void testRegexMultibyte() throws IOException {
+        String text = "caf\u00e9 na\u00efve\nr\u00e9sum\u00e9 d\u00e9j\u00e0 vu\n\u00e9t\u00e9";
+        FileContentSearch.Searcher searcher = new FileContentSearch.RegexSearcher(Pattern.compile("\u00e9\\w"),
+                UTF8, false);
+        List<FileContentSearch.Match> matches = searcher.search("data", new ByteArrayInputStream(text.getBytes(UTF8)));
+        // offsets count the bytes, the accented letters take two
+        assertMatches(matches, offsets(new long[]{2, 14}, new long[]{2, 23}, new long[]{3, 32}));
+
+        searcher = new FileContentSearch.RegexSearcher(Pattern.compile("\u00e9\\w"), UTF8, true);
+        matches = searcher.search("data", new ByteArrayInputStream(text.getBytes(UTF8)));
+        assertMatches(matches, offsets(new long[]{2, 14}));
+    }
+
+    @Test
+    public void testAsciiCompatibleEncodings() {
+        Assert.assertTrue(FileContentSearch.isAsciiCompatible(UTF8));
+        Assert.assertTrue(FileContentSearch.isAsciiCompatible(Charset.forName("ISO-8859-1")));
+        // a byte order mark, or two bytes a character
+        Assert.assertFalse(FileContentSearch.isAsciiCompatible(Charset.forName("UTF-16")));
+        Assert.assertFalse(FileContentSearch.isAsciiCompatible(Charset.forName("UTF-16LE")));
+        Assert.assertFalse(FileContentSearch.isAsciiCompatible(Charset.forName("UTF-32")));
+    }
+
+    @Test
+    public void testSearchFolder() throws IOException {
+        File searched = new File(folder, "folder");
+        Assert.assertTrue(new File(searched, "sub").mkdirs());
+        write(new File(searched, "a.txt"), "one\ntwo key\n");
+        write(new File(searched, "b.log"), "key\n");
+        write(new File(searched, "sub/c.txt"), "\n\nkey key");
+        FileContentSearch search = new FileContentSearch();
+        FileContentSearch.Searcher searcher = new FileContentSearch.LiteralSearcher("key".getBytes(UTF8), false);
+
+        List<FileContentSearch.Match> matches = search.search(searched.getPath(), ".*\\.txt", true, searcher);
+        List<String> found = new ArrayList<String>();
+        for (FileContentSearch.Match match : matches) {
+            found.add(match.file + ":" + match.line + ":" + match.offset);
+        }
+        Assert.assertEquals(found.size(), 3);
+        Assert.assertTrue(found.contains("a.txt:2:8"), found.toString());
+        Assert.assertTrue(found.contains("sub/c.txt:3:2"), found.toString());
+        Assert.assertTrue(found.contains("sub/c.txt:3:6"), found.toString());
+
+        Assert.assertEquals(search.search(searched.getPath(), ".*\\.txt", false, searcher).size(), 1);
+    }
+
+    /**
+     * Non overlapping matches, found byte by byte
+     *
+     * @return return the line number and the offset of every match
+     */
+    private List<long[]> find(byte[] data, byte[] pattern) {
+        List<long[]> matches = new ArrayList<long[]>();
+        long line = 1;
+        int i = 0;
+        while (i < data.length) {
+            if (i <= data.length - pattern.length && regionMatches(data, i, pattern)) {
+                matches.add(new long[]{line, i});
+                for (int j = i; j < i + pattern.length; j++) {
+                    if (data[j] == '\n') {
+                        line++;
+                    }
+                }
+                i += pattern.length;
+            } else {
+                if (data[i] == '\n') {
+                    line++;
+                }
+                i++;
+            }
+        }
+        return matches;
+    }
+
+    private boolean regionMatches(byte[] data, int start, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (data[start + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<long[]> offsets(long[]... matches) {
+        List<long[]> list = new ArrayList<long[]>();
+        for (long[] match : matches) {
+            list.add(match);
+        }
+        return list;
+    }
+
+    private void assertMatches(List<FileContentSearch.Match> matches, List<long[]> expected) {
+        Assert.assertEquals(matches.size(), expected.size());
+        for (int i = 0; i < matches.size(); i++) {
+            Assert.assertEquals(matches.get(i).line, expected.get(i)[0], "line of match " + i);
+            Assert.assertEquals(matches.get(i).offset, expected.get(i)[1], "offset of match " + i);
+        }
+    }
+
+    private void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns at most the given number of bytes a read
+     */
+    private static class ShortReadStream extends InputStream {
+        private final InputStream in;
+        private final int limit;
+
+        ShortReadStream(byte[] data, int limit) {
+            this.in = new ByteArrayInputStream(data);
+            this.limit = limit;
+        }
+
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return in.read(buffer, offset, Math.min(length, limit));
+        }
+    }
+}
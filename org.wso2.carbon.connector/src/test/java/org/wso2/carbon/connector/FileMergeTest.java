@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the merge operation : only the repeated headers are dropped, in the local and streamed merges,
+ * and nothing is written when no file matches
+ */
+public class FileMergeTest {
+    private static final String[] NAMES = new String[]{"a.csv", "b.csv", "c.csv", "d.csv"};
+    private static final String[] CONTENTS = new String[]{"id,name\r\n1,one\r\n", "id,name\n2,two",
+            "3,three\n", "id,name,extra\n4,four\n"};
+    private File folder;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        folder = new File(System.getProperty("java.io.tmpdir"), "fileconnector-merge-" + System.nanoTime());
+        Assert.assertTrue(folder.mkdirs());
+        File source = new File(folder, "source");
+        Assert.assertTrue(source.mkdirs());
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(new File(folder, "source.zip")));
+        try {
+            for (int i = 0; i < NAMES.length; i++) {
+                write(new File(source, NAMES[i]), CONTENTS[i]);
+                out.putNextEntry(new ZipEntry(NAMES[i]));
+                out.write(CONTENTS[i].getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void testSkipHeader() throws IOException {
+        File merged = new File(folder, "header.csv");
+        Assert.assertTrue(new FileMerge().mergeFiles(new File(folder, "source").getPath(), merged.getPath(),
+                ".*\\.csv", false, true));
+        // the files without the header, or with another first line, are merged whole
+        Assert.assertEquals(FileUtils.readFileToString(merged, "UTF-8"),
+                "id,name\r\n1,one\r\n2,two\n3,three\nid,name,extra\n4,four\n");
+    }
+
+    @Test
+    public void testKeepHeader() throws IOException {
+        File merged = new File(folder, "all.csv");
+        Assert.assertTrue(new FileMerge().mergeFiles(new File(folder, "source").getPath(), merged.getPath(),
+                ".*\\.csv", false, false));
+        StringBuilder expected = new StringBuilder();
+        for (String content : CONTENTS) {
+            expected.append(content);
+        }
+        Assert.assertEquals(FileUtils.readFileToString(merged, "UTF-8"), expected.toString());
+    }
+
+    @Test
+    public void testSkipHeaderStream() throws IOException {
+        File merged = new File(folder, "stream.csv");
+        Assert.assertTrue(new FileMerge().mergeFiles("zip:" + new File(folder, "source.zip").getAbsolutePath()
+                + "!/", merged.getPath(), ".*\\.csv", false, true));
+        Assert.assertEquals(FileUtils.readFileToString(merged, "UTF-8"),
+                "id,name\r\n1,one\r\n2,two\n3,three\nid,name,extra\n4,four\n");
+    }
+
+    @Test
+    public void testNoFile() throws IOException {
+        File merged = new File(folder, "none.csv");
+        Assert.assertFalse(new FileMerge().mergeFiles(new File(folder, "source").getPath(), merged.getPath(),
+                ".*\\.txt", false, true));
+        Assert.assertFalse(merged.exists(), "the destination is created without a file to merge");
+    }
+
+    private void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the sort operation : the in memory sort and the merge of spilled runs (in several passes) give
+ * the lines of a stable sort, with the header kept on top and only the first line of a key kept by dedup
+ */
+public class FileSortTest {
+    private static final String SORT_MEMORY = "fileconnector.sort.memory";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private File folder;
+    private String header;
+    private List<String> lines;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        folder = new File(System.getProperty("java.io.tmpdir"), "fileconnector-sort-" + System.nanoTime());
+        Assert.assertTrue(folder.mkdirs());
+        header = "id,key,payload";
+        lines = new ArrayList<String>();
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            // few keys, so that many lines share a key and the order among them shows the stability
+            lines.add(String.format("%05d,key-%02d,%s", i, random.nextInt(60), i % 3 == 0 ? "\u00e9" : "payload"));
+        }
+    }
+
+    @AfterClass
+    public void deleteFolder() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        System.clearProperty(SORT_MEMORY);
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        assertSorted("memory", false, false);
+        assertSorted("memory-header", true, false);
+        assertSorted("memory-dedup", true, true);
+    }
+
+    @Test
+    public void testSpilled() throws IOException {
+        // a few lines a run, more runs than merged at once
+        System.setProperty(SORT_MEMORY, "10000");
+        assertSorted("spilled", false, false);
+        assertSorted("spilled-header", true, false);
+        assertSorted("spilled-dedup", true, true);
+    }
+
+    @Test
+    public void testWholeLine() throws IOException {
+        System.setProperty(SORT_MEMORY, "10000");
+        // the ids lead the lines, sorted by whole line they come back in id order
+        List<String> shuffled = new ArrayList<String>(lines);
+        Collections.shuffle(shuffled, new Random(2));
+        File source = write(new File(folder, "whole.csv"), null, shuffled);
+        File destination = new File(folder, "whole-sorted.csv");
+        Assert.assertTrue(new FileSort().sortFile(source.getPath(), destination.getPath(),
+                new FileSort.LineComparator(0, ","), false, false, UTF8));
+        Assert.assertEquals(read(destination), lines);
+    }
+
+    private void assertSorted(String name, boolean skipHeader, boolean dedup) throws IOException {
+        File source = write(new File(folder, name + ".csv"), skipHeader ? header : null, lines);
+        File destination = new File(folder, name + "-sorted.csv");
+        FileSort.LineComparator comparator = new FileSort.LineComparator(2, ",");
+        Assert.assertTrue(new FileSort().sortFile(source.getPath(), destination.getPath(), comparator, skipHeader,
+                dedup, UTF8));
+
+        List<String> expected = new ArrayList<String>(lines);
+        // stable, lines of the same key stay in the input order
+        Collections.sort(expected, comparator);
+        if (dedup) {
+            List<String> unique = new ArrayList<String>();
+            for (String line : expected) {
+                if (unique.isEmpty() || comparator.compare(unique.get(unique.size() - 1), line) != 0) {
+                    unique.add(line);
+                }
+            }
+            expected = unique;
+            Assert.assertEquals(expected.size(), 60);
+        }
+        if (skipHeader) {
+            expected.add(0, header);
+        }
+        Assert.assertEquals(read(destination), expected);
+    }
+
+    private File write(File file, String first, List<String> content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+        try {
+            if (first != null) {
+                writer.write(first);
+                writer.write('\n');
+            }
+            for (String line : content) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private List<String> read(File file) throws IOException {
+        List<String> content = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return content;
+    }
+}
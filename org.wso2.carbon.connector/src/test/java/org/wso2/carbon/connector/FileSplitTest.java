@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the split operation : chunks end at line boundaries, and the local (scan then write
+ * concurrently) and streamed splits give the same chunks
+ */
+public class FileSplitTest {
+    private File folder;
+    private byte[] data;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        folder = new File(System.getProperty("java.io.tmpdir"), "fileconnector-split-" + System.nanoTime());
+        Assert.assertTrue(folder.mkdirs());
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("line-").append(i).append(i % 7 == 0 ? " with a longer text" : "").append('\n');
+        }
+        data = content.toString().getBytes("UTF-8");
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void testSplitByLines() throws IOException {
+        File source = write(new File(folder, "lines.txt"), data);
+        File chunks = new File(folder, "lines");
+        Assert.assertEquals(new FileSplit().splitFile(source.getPath(), chunks.getPath(), true, 30).size(), 4);
+        List<byte[]> contents = read(chunks, "lines", 4);
+        Assert.assertEquals(countLines(contents.get(0)), 30);
+        Assert.assertEquals(countLines(contents.get(1)), 30);
+        Assert.assertEquals(countLines(contents.get(2)), 30);
+        Assert.assertEquals(countLines(contents.get(3)), 10);
+        assertJoined(contents);
+    }
+
+    @Test
+    public void testSplitBySize() throws IOException {
+        File source = write(new File(folder, "size.txt"), data);
+        File chunks = new File(folder, "size");
+        int count = new FileSplit().splitFile(source.getPath(), chunks.getPath(), false, 100).size();
+        List<byte[]> contents = read(chunks, "size", count);
+        for (int i = 0; i < count - 1; i++) {
+            // at least the chunk size, up to the end of the line reaching it
+            byte[] chunk = contents.get(i);
+            Assert.assertTrue(chunk.length >= 100, "chunk " + i + " is " + chunk.length + " bytes");
+            Assert.assertEquals(chunk[chunk.length - 1], (byte) '\n');
+            Assert.assertTrue(countLines(chunk) == 1 || lastLineStart(chunk) < 100);
+        }
+        assertJoined(contents);
+    }
+
+    @Test
+    public void testSplitStream() throws IOException {
+        File local = write(new File(folder, "stream.txt"), data);
+        File zip = new File(folder, "stream.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            out.putNextEntry(new ZipEntry("stream.txt"));
+            out.write(data);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        File localChunks = new File(folder, "stream-local");
+        File streamChunks = new File(folder, "stream-zip");
+        FileSplit split = new FileSplit();
+        for (boolean byLines : new boolean[]{true, false}) {
+            int count = split.splitFile(local.getPath(), localChunks.getPath(), byLines, byLines ? 13 : 150).size();
+            Assert.assertEquals(split.splitFile("zip:" + zip.getAbsolutePath() + "!/stream.txt",
+                    streamChunks.getPath(), byLines, byLines ? 13 : 150).size(), count);
+            List<byte[]> expected = read(localChunks, "stream", count);
+            List<byte[]> actual = read(streamChunks, "stream", count);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(actual.get(i), expected.get(i), "chunk " + (i + 1));
+            }
+        }
+    }
+
+    private void assertJoined(List<byte[]> contents) throws IOException {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (byte[] content : contents) {
+            joined.write(content);
+        }
+        Assert.assertEquals(joined.toByteArray(), data);
+    }
+
+    private int countLines(byte[] content) {
+        int lines = 0;
+        for (byte b : content) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private int lastLineStart(byte[] content) {
+        for (int i = content.length - 2; i >= 0; i--) {
+            if (content[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private List<byte[]> read(File chunks, String name, int count) throws IOException {
+        List<byte[]> contents = new ArrayList<byte[]>();
+        for (int i = 1; i <= count; i++) {
+            File chunk = new File(chunks, String.format("%s_%04d.txt", name, i));
+            Assert.assertTrue(chunk.isFile(), chunk + " is missing");
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            InputStream in = new FileInputStream(chunk);
+            try {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+            contents.add(content.toByteArray());
+        }
+        Assert.assertFalse(new File(chunks, String.format("%s_%04d.txt", name, count + 1)).exists());
+        return contents;
+    }
+
+    private File write(File file, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
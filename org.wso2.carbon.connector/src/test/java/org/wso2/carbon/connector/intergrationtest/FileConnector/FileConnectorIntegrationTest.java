@@ -180,4 +180,114 @@ public class FileConnectorIntegrationTest extends ConnectorIntegrationTestBase {
         Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
         // Assert.assertEquals(true, esbRestResponse.getBody().toString().contains("true"));
     }
+
+    /**
+     * Positive test case for split method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector split file integration test")
+    public void testSplitFile() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:split");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileSplitMandatory.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for merge method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector merge file integration test")
+    public void testMergeFiles() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:merge");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileMergeMandatory.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for read method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector read tail integration test")
+    public void testReadFileTail() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:readTail");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileReadTail.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for changes method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector folder changes integration test")
+    public void testFolderChanges() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:changes");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileChangesMandatory.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for read method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector read records integration test")
+    public void testReadFileRecords() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:readRecords");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileReadRecords.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for read method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector read lines integration test")
+    public void testReadFileLines() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:readLines");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileReadLines.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for sort method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector sort file integration test")
+    public void testSortFile() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:sort");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileSortMandatory.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for contentSearch method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector content search integration test")
+    public void testSearchFileContent() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:contentSearch");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileContentSearchMandatory.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for stats method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector folder statistics integration test")
+    public void testFolderStats() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:stats");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileStatsMandatory.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
+
+    /**
+     * Positive test case for compare method with mandatory parameters.
+     */
+    @Test(groups = {"wso2.esb"}, description = "FileConnector compare files integration test")
+    public void testCompareFiles() throws Exception {
+        esbRequestHeadersMap.put("Action", "urn:compare");
+        RestResponse<JSONObject> esbRestResponse =
+                sendJsonRestRequest(proxyUrl, "POST", esbRequestHeadersMap, "FileCompareMandatory.json");
+        Assert.assertEquals(esbRestResponse.getHttpStatusCode(), 200);
+    }
 }
\ No newline at end of file
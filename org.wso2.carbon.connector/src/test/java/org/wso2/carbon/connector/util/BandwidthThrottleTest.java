@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the throttle metrics : the throttled time is the time the writers actually waited
+ */
+public class BandwidthThrottleTest {
+    private static final String RATE = "fileconnector.throttle.operation.ThrottleTest";
+
+    @AfterClass
+    public void tearDown() {
+        System.clearProperty(RATE);
+        BandwidthThrottle.close();
+    }
+
+    @Test
+    public void testInterruptedWait() throws Exception {
+        System.setProperty(RATE, "1000");
+        final OutputStream out = BandwidthThrottle.throttle(new ByteArrayOutputStream(), "ThrottleTest");
+        final Exception[] failure = new Exception[1];
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    // ten seconds over the burst of one second
+                    out.write(new byte[11000]);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        long start = System.currentTimeMillis();
+        writer.start();
+        Thread.sleep(200);
+        writer.interrupt();
+        writer.join(10000);
+        long elapsed = System.currentTimeMillis() - start;
+        Assert.assertTrue(failure[0] instanceof InterruptedIOException);
+
+        ObjectName name = new ObjectName("org.wso2.carbon.connector:type=FileConnectorThrottle,name="
+                + ObjectName.quote("throttle.operation.ThrottleTest"));
+        Assert.assertEquals(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Bytes"), 11000L);
+        long throttled = (Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ThrottledTime");
+        Assert.assertTrue(throttled > 0 && throttled <= elapsed, "throttled " + throttled + " ms in " + elapsed
+                + " ms");
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.axiom.om.OMElement;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the streaming record reader, on XML and JSON files
+ */
+public class FileRecordReaderTest {
+
+    @Test
+    public void testXmlRootChildren() throws IOException {
+        List<OMElement> records = readAll("<orders><order id=\"1\"><item>a</item></order>"
+                + "<order id=\"2\"><item>b</item></order><note>c</note></orders>", false, null);
+        Assert.assertEquals(records.size(), 3);
+        Assert.assertEquals(records.get(0).getLocalName(), "order");
+        Assert.assertEquals(records.get(0).getAttributeValue(new QName("id")), "1");
+        Assert.assertEquals(records.get(1).getFirstChildWithName(new QName("item")).getText(), "b");
+        Assert.assertEquals(records.get(2).getLocalName(), "note");
+    }
+
+    @Test
+    public void testXmlRecordPath() throws IOException {
+        String xml = "<shop><orders><order>1</order><order>2</order></orders><archive><order>3</order></archive>"
+                + "</shop>";
+        List<OMElement> records = readAll(xml, false, "/shop/orders/order");
+        Assert.assertEquals(records.size(), 2);
+        Assert.assertEquals(records.get(1).getText(), "2");
+        // a single name matches at any depth
+        records = readAll(xml, false, "order");
+        Assert.assertEquals(records.size(), 3);
+        Assert.assertEquals(records.get(2).getText(), "3");
+    }
+
+    @Test
+    public void testJsonArray() throws IOException {
+        List<OMElement> records = readAll("[{\"id\":1,\"name\":\"a, [b]\"}, {\"id\":2,\"name\":\"q\\\"uote\"} ]",
+                true, null);
+        Assert.assertEquals(records.size(), 2);
+        Assert.assertEquals(records.get(0).getLocalName(), FileRecordReader.RECORD);
+        Assert.assertEquals(records.get(0).getFirstChildWithName(new QName("name")).getText(), "a, [b]");
+        Assert.assertEquals(records.get(1).getFirstChildWithName(new QName("id")).getText(), "2");
+        Assert.assertEquals(records.get(1).getFirstChildWithName(new QName("name")).getText(), "q\"uote");
+    }
+
+    @Test
+    public void testJsonRecordPath() throws IOException {
+        String json = "{\"meta\":{\"count\":[1,2]},"
+                + "\"data\":{\"orders\":[{\"id\":\"x\"},{\"id\":\"y\"},{\"id\":\"z\"}]}}";
+        List<OMElement> records = readAll(json, true, "$.data.orders");
+        Assert.assertEquals(records.size(), 3);
+        Assert.assertEquals(records.get(2).getFirstChildWithName(new QName("id")).getText(), "z");
+        Assert.assertTrue(readAll(json, true, "$.data.missing").isEmpty());
+        Assert.assertTrue(readAll("[]", true, null).isEmpty());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testInvalidJson() throws IOException {
+        readAll("[{\"id\":1} {\"id\":2}]", true, null);
+    }
+
+    private List<OMElement> readAll(String content, boolean json, String recordPath) throws IOException {
+        FileRecordReader reader = FileRecordReader.create(new ByteArrayInputStream(content.getBytes("UTF-8")),
+                json, recordPath, null);
+        try {
+            List<OMElement> records = new ArrayList<OMElement>();
+            OMElement record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+            return records;
+        } finally {
+            reader.close();
+        }
+    }
+}
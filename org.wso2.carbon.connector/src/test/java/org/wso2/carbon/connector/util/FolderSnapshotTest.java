@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the folder snapshot : the changes found between two looks at a folder, and the persisted state
+ */
+public class FolderSnapshotTest {
+    private static final String CHECKPOINT_DIR = "fileconnector.checkpoint.dir";
+    private String previousDir;
+    private File folder;
+
+    @BeforeClass
+    public void setUp() {
+        previousDir = System.getProperty(CHECKPOINT_DIR);
+        folder = new File(System.getProperty("java.io.tmpdir"), "fileconnector-snapshot-" + System.nanoTime());
+        System.setProperty(CHECKPOINT_DIR, folder.getPath());
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+        if (previousDir == null) {
+            System.clearProperty(CHECKPOINT_DIR);
+        } else {
+            System.setProperty(CHECKPOINT_DIR, previousDir);
+        }
+    }
+
+    @Test
+    public void testWholeFolder() throws IOException {
+        FolderSnapshot snapshot = FolderSnapshot.load("whole");
+        List<String[]> changes = new ArrayList<String[]>();
+        snapshot.update("", entries("a.txt", "1,100", "sub/b.txt", "2,100"), changes);
+        assertChanges(changes, FolderSnapshot.CREATED, "a.txt", FolderSnapshot.CREATED, "sub/b.txt");
+
+        changes.clear();
+        snapshot.update("", entries("a.txt", "1,200", "sub/c.txt", "3,100"), changes);
+        assertChanges(changes, FolderSnapshot.MODIFIED, "a.txt", FolderSnapshot.CREATED, "sub/c.txt",
+                FolderSnapshot.DELETED, "sub/b.txt");
+
+        changes.clear();
+        snapshot.update("", entries("a.txt", "1,200", "sub/c.txt", "3,100"), changes);
+        Assert.assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testSubPath() throws IOException {
+        FolderSnapshot snapshot = FolderSnapshot.load("path");
+        List<String[]> changes = new ArrayList<String[]>();
+        snapshot.update("", entries("a.txt", "1,100", "sub/b.txt", "2,100", "sub2/d.txt", "4,100",
+                "subway.txt", "5,100"), changes);
+
+        // only the entries under sub are compared, sub2 and subway.txt share its prefix but are not under it
+        changes.clear();
+        snapshot.update("sub", entries("sub/c.txt", "3,100"), changes);
+        assertChanges(changes, FolderSnapshot.CREATED, "sub/c.txt", FolderSnapshot.DELETED, "sub/b.txt");
+
+        changes.clear();
+        snapshot.update("", entries("a.txt", "1,100", "sub/c.txt", "3,100", "sub2/d.txt", "4,100",
+                "subway.txt", "5,100"), changes);
+        Assert.assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testPersisted() throws IOException {
+        FolderSnapshot snapshot = FolderSnapshot.load("persisted");
+        List<String[]> changes = new ArrayList<String[]>();
+        snapshot.update("", entries("a.txt", FolderSnapshot.getState(1, 100), "b.txt",
+                FolderSnapshot.getState(2, 100)), changes);
+        snapshot.save();
+
+        changes.clear();
+        FolderSnapshot.load("persisted").update("", entries("a.txt", FolderSnapshot.getState(1, 100)), changes);
+        assertChanges(changes, FolderSnapshot.DELETED, "b.txt");
+
+        changes.clear();
+        FolderSnapshot.load("other").update("", entries("a.txt", FolderSnapshot.getState(1, 100)), changes);
+        assertChanges(changes, FolderSnapshot.CREATED, "a.txt");
+    }
+
+    private Map<String, String> entries(String... pathsAndStates) {
+        Map<String, String> entries = new TreeMap<String, String>();
+        for (int i = 0; i < pathsAndStates.length; i += 2) {
+            entries.put(pathsAndStates[i], pathsAndStates[i + 1]);
+        }
+        return entries;
+    }
+
+    private void assertChanges(List<String[]> changes, String... typesAndPaths) {
+        Assert.assertEquals(changes.size(), typesAndPaths.length / 2);
+        for (int i = 0; i < changes.size(); i++) {
+            Assert.assertEquals(changes.get(i)[0], typesAndPaths[i * 2], "type of change " + i);
+            Assert.assertEquals(changes.get(i)[1], typesAndPaths[i * 2 + 1], "path of change " + i);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the pipelined copy : the bytes are copied in order, and a failed copy returns only once the
+ * reader stopped reading the source
+ */
+public class PipelinedCopyTest {
+
+    @Test
+    public void testCopy() throws IOException {
+        byte[] data = new byte[5 * 1024 * 1024 + 123];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(PipelinedCopy.copy(new ByteArrayInputStream(data), out), data.length);
+        Assert.assertEquals(out.toByteArray(), data);
+        Assert.assertEquals(PipelinedCopy.copy(new ByteArrayInputStream(new byte[0]), out), 0);
+    }
+
+    @Test
+    public void testWriteFails() throws IOException {
+        final SlowStream in = new SlowStream();
+        OutputStream out = new OutputStream() {
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                // fail while the reader is inside a read
+                try {
+                    in.slowRead.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("write failed");
+            }
+        };
+        try {
+            PipelinedCopy.copy(in, out);
+            Assert.fail("the failed write was not reported");
+        } catch (IOException e) {
+            Assert.assertEquals(e.getMessage(), "write failed");
+        }
+        // the caller owns the source again
+        Assert.assertEquals(in.reading.get(), 0);
+        int reads = in.reads.get();
+        in.close();
+        Assert.assertEquals(in.reads.get(), reads, "read after the copy returned");
+    }
+
+    /**
+     * Endless source whose reads after the first one take a while and do not notice the interrupts, as a
+     * blocking socket read
+     */
+    private static class SlowStream extends InputStream {
+        private final AtomicInteger reading = new AtomicInteger();
+        private final AtomicInteger reads = new AtomicInteger();
+        private final CountDownLatch slowRead = new CountDownLatch(1);
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            read(b, 0, 1);
+            return b[0] & 0xff;
+        }
+
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            reading.incrementAndGet();
+            try {
+                if (reads.incrementAndGet() > 1) {
+                    slowRead.countDown();
+                    long end = System.currentTimeMillis() + 200;
+                    while (System.currentTimeMillis() < end) {
+                        Thread.yield();
+                    }
+                }
+                return length;
+            } finally {
+                reading.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p/>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.connector.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests of the slots of a host : freed slots go to the smallest waiting file unless the oldest waiter
+ * aged, waiters time out or are interrupted without holding a slot, and pooled sessions take free slots only
+ */
+public class TransferSchedulerTest {
+    private static final String TIMEOUT = "fileconnector.scheduler.timeout";
+    private static final String AGING_TIME = "fileconnector.scheduler.agingTime";
+
+    @AfterMethod
+    public void tearDown() {
+        System.clearProperty(TIMEOUT);
+        System.clearProperty(AGING_TIME);
+    }
+
+    @Test
+    public void testSmallestFirst() throws Exception {
+        TransferScheduler.HostSlots slots = new TransferScheduler.HostSlots("size:22", 1);
+        Assert.assertTrue(slots.tryAcquire());
+        List<Long> granted = Collections.synchronizedList(new ArrayList<Long>());
+        Semaphore acquired = new Semaphore(0);
+        for (long size : new long[]{300, 100, 200}) {
+            startWaiter(slots, size, granted, acquired);
+        }
+        awaitWaiting(slots, 3);
+        Assert.assertFalse(slots.tryAcquire(), "the waiters go first");
+        for (int i = 0; i < 3; i++) {
+            slots.release();
+            Assert.assertTrue(acquired.tryAcquire(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(granted.toString(), "[100, 200, 300]");
+        slots.release();
+        Assert.assertTrue(slots.tryAcquire());
+    }
+
+    @Test
+    public void testOldestFirstOnceAged() throws Exception {
+        // every waiter is past the aging time
+        System.setProperty(AGING_TIME, "0");
+        TransferScheduler.HostSlots slots = new TransferScheduler.HostSlots("aging:22", 1);
+        Assert.assertTrue(slots.tryAcquire());
+        List<Long> granted = Collections.synchronizedList(new ArrayList<Long>());
+        Semaphore acquired = new Semaphore(0);
+        startWaiter(slots, 300, granted, acquired);
+        awaitWaiting(slots, 1);
+        startWaiter(slots, 100, granted, acquired);
+        awaitWaiting(slots, 2);
+        slots.release();
+        Assert.assertTrue(acquired.tryAcquire(10, TimeUnit.SECONDS));
+        slots.release();
+        Assert.assertTrue(acquired.tryAcquire(10, TimeUnit.SECONDS));
+        Assert.assertEquals(granted.toString(), "[300, 100]");
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        System.setProperty(TIMEOUT, "100");
+        TransferScheduler.HostSlots slots = new TransferScheduler.HostSlots("timeout:22", 1);
+        Assert.assertTrue(slots.tryAcquire());
+        long start = System.currentTimeMillis();
+        try {
+            slots.acquire(0);
+            Assert.fail("acquired a slot of a full host");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Timed out"), e.getMessage());
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+        Assert.assertEquals(slots.getWaiting(), 0);
+        slots.release();
+        Assert.assertTrue(slots.tryAcquire(), "the timed out waiter holds no slot");
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        TransferScheduler.HostSlots slots = new TransferScheduler.HostSlots("interrupt:22", 1);
+        Assert.assertTrue(slots.tryAcquire());
+        Waiter waiter = new Waiter(slots);
+        waiter.start();
+        awaitWaiting(slots, 1);
+        waiter.interrupt();
+        waiter.join(10000);
+        Assert.assertTrue(waiter.failure instanceof IOException);
+        Assert.assertTrue(waiter.interrupted, "the interrupt is kept");
+        Assert.assertEquals(slots.getWaiting(), 0);
+        slots.release();
+        Assert.assertTrue(slots.tryAcquire(), "the interrupted waiter holds no slot");
+    }
+
+    @Test
+    public void testInterruptedWhenGranted() throws Exception {
+        TransferScheduler.HostSlots slots = new TransferScheduler.HostSlots("granted:22", 1);
+        Assert.assertTrue(slots.tryAcquire());
+        Waiter waiter = new Waiter(slots);
+        waiter.start();
+        awaitWaiting(slots, 1);
+        synchronized (slots) {
+            // granted and interrupted before the waiter wakes up
+            slots.release();
+            waiter.interrupt();
+        }
+        waiter.join(10000);
+        Assert.assertFalse(waiter.isAlive());
+        // either the waiter got the slot, or it gave it back
+        Assert.assertEquals(slots.tryAcquire(), waiter.failure != null);
+    }
+
+    @Test
+    public void testSessionSlots() {
+        String key = TransferScheduler.getKey("sessions.example.com", 22);
+        System.setProperty("fileconnector.scheduler.maxConcurrent.sessions.example.com", "2");
+        try {
+            Assert.assertTrue(TransferScheduler.tryAcquireSession(key));
+            Assert.assertTrue(TransferScheduler.tryAcquireSession(key));
+            Assert.assertFalse(TransferScheduler.tryAcquireSession(key));
+            Assert.assertFalse(TransferScheduler.hasWaiters(key));
+            TransferScheduler.releaseSession(key);
+            Assert.assertTrue(TransferScheduler.tryAcquireSession(key));
+            TransferScheduler.releaseSession(key);
+            TransferScheduler.releaseSession(key);
+        } finally {
+            System.clearProperty("fileconnector.scheduler.maxConcurrent.sessions.example.com");
+        }
+        // hosts without a limit
+        Assert.assertTrue(TransferScheduler.tryAcquireSession(TransferScheduler.getKey("unlimited.example.com", 22)));
+    }
+
+    private void startWaiter(final TransferScheduler.HostSlots slots, final long size, final List<Long> granted,
+                             final Semaphore acquired) {
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    slots.acquire(size);
+                    granted.add(size);
+                } catch (IOException e) {
+                    granted.add(-size);
+                }
+                acquired.release();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void awaitWaiting(TransferScheduler.HostSlots slots, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (slots.getWaiting() < count) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline, "waiters did not queue");
+            Thread.sleep(5);
+        }
+    }
+
+    private static class Waiter extends Thread {
+        private final TransferScheduler.HostSlots slots;
+        private volatile Exception failure;
+        private volatile boolean interrupted;
+
+        Waiter(TransferScheduler.HostSlots slots) {
+            this.slots = slots;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                slots.acquire(0);
+            } catch (IOException e) {
+                failure = e;
+            }
+            interrupted = isInterrupted();
+        }
+    }
+}